@@ -11,6 +11,8 @@ public class RagdollDemo extends SDLActivity {
     protected void onCreate(Bundle savedInstanceState) {
         // Make sure this is before calling super.onCreate
         setTheme(R.style.CUGLTheme);
+        // Steam Controller input lag is noticeable at the default connection interval
+        HIDDeviceManager.setBluetoothLowLatency(true);
         super.onCreate(savedInstanceState);
     }
 }
@@ -3,33 +3,31 @@
  *
  * To use this class do the following 3 steps in your activity:
  *
- * define 3 sensors as member variables
- *       Sensor accelerometer;
- *       Sensor magnetometer;
- *       Sensor vectorSensor;
- *       DeviceOrientation deviceOrientation;
- *
  * add this to the activity's onCreate
  *       mSensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
- *       accelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
- *       magnetometer = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
- *       deviceOrientation = new DeviceOrientation();
+ *       deviceOrientation = new DeviceOrientation(mSensorManager, portrait);
  *
  * add this to onResume
- *       mSensorManager.registerListener(deviceOrientation.getEventListener(), accelerometer, SensorManager.SENSOR_DELAY_UI);
- *       mSensorManager.registerListener(deviceOrientation.getEventListener(), magnetometer, SensorManager.SENSOR_DELAY_UI);
+ *       deviceOrientation.start();
  *
  * add this to onPause
- *       mSensorManager.unregisterListener(deviceOrientation.getEventListener());
+ *       deviceOrientation.stop();
  *
  *
  * then, you can simply call * deviceOrientation.getOrientation() * wherever you want
  *
  *
+ * The orientation only depends on which way gravity points in device coordinates.  That is
+ * read from the game rotation vector where there is one, as it is already filtered, and from
+ * the accelerometer otherwise.  Nothing is allocated per sample: the gravity direction is
+ * averaged over a small ring of samples with running sums, and the orientation only changes
+ * once the tilt is past the boundary by a margin, so a device held near 45 degrees or lying
+ * flat doesn't flicker between orientations.
+ *
  * This is another alternative to this class's approach:
  * http://stackoverflow.com/questions/11175599/how-to-measure-the-tilt-of-the-phone-in-xy-plane-using-accelerometer-in-android/15149421#15149421
  *
- *  @author abdelhady 
+ *  @author abdelhady
  *  @date 9/23/14.
  *  @link https://gist.github.com/abdelhady/501f6e48c1f3e32b253a#file-deviceorientation
  */
@@ -39,30 +37,75 @@ import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
-import android.content.Context;
-import android.util.DisplayMetrics;
-import android.view.*;
 
 public class DeviceOrientation {
-    //private final int ORIENTATION_PORTRAIT = ExifInterface.ORIENTATION_ROTATE_90; // 6
-    //private final int ORIENTATION_LANDSCAPE_REVERSE = ExifInterface.ORIENTATION_ROTATE_180; // 3
-    //private final int ORIENTATION_LANDSCAPE = ExifInterface.ORIENTATION_NORMAL; // 1
-    //private final int ORIENTATION_PORTRAIT_REVERSE = ExifInterface.ORIENTATION_ROTATE_270; // 8
-
-    int smoothness = 1;
-    private float averagePitch = 0;
-    private float averageRoll = 0;
-    private int orientation = SDLActivity.SDL_ORIENTATION_UNKNOWN;
-
-    private float[] pitches;
-    private float[] rolls;
-    
-    private boolean standard;
-
-    public DeviceOrientation(boolean portrait) {
-    	standard = portrait;
-        pitches = new float[smoothness];
-        rolls = new float[smoothness];
+
+    // Number of samples averaged
+    private static final int SMOOTHNESS = 4;
+
+    // Tilt in degrees that separates upright from sideways, and the margin to cross it
+    private static final float TILT = 30;
+    private static final float HYSTERESIS = 10;
+
+    // Ignore accelerometer samples below this fraction of gravity, e.g. in free fall
+    private static final float MIN_GRAVITY = 0.25f * SensorManager.GRAVITY_EARTH;
+
+    // The way the device is held, relative to its natural orientation
+    private static final int HELD_UNKNOWN = 0;
+    private static final int HELD_UP = 1;
+    private static final int HELD_DOWN = 2;
+    private static final int HELD_LEFT = 3;
+    private static final int HELD_RIGHT = 4;
+
+    private final SensorManager sensorManager;
+    private final Sensor sensor;
+    private final boolean standard;
+
+    private final float[] rotation = new float[9];
+    private final float[] gravityX = new float[SMOOTHNESS];
+    private final float[] gravityY = new float[SMOOTHNESS];
+    private final float[] gravityZ = new float[SMOOTHNESS];
+    private double sumX;
+    private double sumY;
+    private double sumZ;
+    private int next;
+    private int count;
+
+    private boolean listening;
+    private int held = HELD_UNKNOWN;
+    private volatile int orientation = SDLActivity.SDL_ORIENTATION_UNKNOWN;
+
+    public DeviceOrientation(SensorManager sensorManager, boolean portrait) {
+        this.sensorManager = sensorManager;
+        standard = portrait;
+
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR);
+        if (sensor == null) {
+            sensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        }
+        this.sensor = sensor;
+    }
+
+    /** Starts listening to the sensor.  Returns false if the device has none. */
+    public boolean start() {
+        if (sensor == null) {
+            return false;
+        }
+        if (!listening) {
+            listening = sensorManager.registerListener(sensorEventListener, sensor, SensorManager.SENSOR_DELAY_UI);
+        }
+        return listening;
+    }
+
+    /** Stops listening and forgets the samples, which would be stale on resume. */
+    public void stop() {
+        if (listening) {
+            sensorManager.unregisterListener(sensorEventListener);
+            listening = false;
+        }
+        next = 0;
+        count = 0;
+        sumX = sumY = sumZ = 0;
     }
 
     public SensorEventListener getEventListener() {
@@ -74,76 +117,114 @@ public class DeviceOrientation {
     }
 
     SensorEventListener sensorEventListener = new SensorEventListener() {
-        float[] mGravity;
-        float[] mGeomagnetic;
-
         @Override
         public void onSensorChanged(SensorEvent event) {
-            if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                mGravity = event.values;
-            }
-            if (event.sensor.getType() == Sensor.TYPE_MAGNETIC_FIELD) {
-                mGeomagnetic = event.values;
-            }
-            if (mGravity != null && mGeomagnetic != null) {
-                float R[] = new float[9];
-                float I[] = new float[9];
-                boolean success = SensorManager.getRotationMatrix(R, I, mGravity, mGeomagnetic);
-                if (success) {
-                    float orientationData[] = new float[3];
-                    SensorManager.getOrientation(R, orientationData);
-                    averagePitch = addValue(orientationData[1], pitches);
-                    averageRoll = addValue(orientationData[2], rolls);
-                    orientation = calculateOrientation();
+            float x, y, z;
+            if (event.sensor.getType() == Sensor.TYPE_GAME_ROTATION_VECTOR) {
+                // The last row of the rotation matrix is gravity in device coordinates
+                SensorManager.getRotationMatrixFromVector(rotation, event.values);
+                x = rotation[6];
+                y = rotation[7];
+                z = rotation[8];
+            } else {
+                x = event.values[0];
+                y = event.values[1];
+                z = event.values[2];
+                float norm = (float) Math.sqrt(x * x + y * y + z * z);
+                if (norm < MIN_GRAVITY) {
+                    return;
                 }
+                x /= norm;
+                y /= norm;
+                z /= norm;
             }
+            addValue(x, y, z);
+            update();
         }
 
         @Override
         public void onAccuracyChanged(Sensor sensor, int accuracy) {
-            // TODO Auto-generated method stub
-
         }
     };
 
-    private float addValue(float value, float[] values) {
-        value = (float) Math.round((Math.toDegrees(value)));
-        float average = 0;
-        for (int i = 1; i < smoothness; i++) {
-            values[i - 1] = values[i];
-            average += values[i];
+    private void addValue(float x, float y, float z) {
+        if (count == SMOOTHNESS) {
+            sumX -= gravityX[next];
+            sumY -= gravityY[next];
+            sumZ -= gravityZ[next];
+        } else {
+            count++;
         }
-        values[smoothness - 1] = value;
-        average = (average + value) / smoothness;
-        return average;
+        gravityX[next] = x;
+        gravityY[next] = y;
+        gravityZ[next] = z;
+        sumX += x;
+        sumY += y;
+        sumZ += z;
+        next = (next + 1) % SMOOTHNESS;
     }
 
-    private int calculateOrientation() {
-        Context context = SDLActivity.getContext();
-        Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+    private void update() {
+        // As in SensorManager.getOrientation(), from the averaged gravity direction
+        double x = sumX / count;
+        double y = sumY / count;
+        double z = sumZ / count;
+        double norm = Math.sqrt(x * x + y * y + z * z);
+        if (norm == 0) {
+            return;
+        }
+        float pitch = (float) Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, -y / norm))));
+        float roll = (float) Math.toDegrees(Math.atan2(-x, z));
 
-        // finding local orientation dip
-        if (((orientation == SDLActivity.SDL_ORIENTATION_PORTRAIT || 
-        	  orientation == SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED)
-                && (averageRoll > -30 && averageRoll < 30))) {
-            if (averagePitch > 0)
-                return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED : SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED;
-            else
-                return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT : SDLActivity.SDL_ORIENTATION_LANDSCAPE;
+        int newHeld = calculateHeld(pitch, roll);
+        if (newHeld != held) {
+            held = newHeld;
+            orientation = toOrientation(newHeld);
+        }
+    }
+
+    private int calculateHeld(float pitch, float roll) {
+        float absPitch = Math.abs(pitch);
+        float absRoll = Math.abs(roll);
+        boolean upright = held == HELD_UP || held == HELD_DOWN;
+        boolean sideways = held == HELD_LEFT || held == HELD_RIGHT;
+
+        // Leaving the current way of holding the device takes a wider tilt than entering it
+        boolean pitchDecides;
+        if (upright) {
+            pitchDecides = absRoll < TILT + HYSTERESIS || absPitch >= TILT;
+        } else if (sideways) {
+            pitchDecides = absPitch >= TILT + HYSTERESIS;
         } else {
-            // divides between all orientations
-            if (Math.abs(averagePitch) >= 30) {
-                if (averagePitch > 0)
-                    return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED : SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED;
-                else
-                    return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT : SDLActivity.SDL_ORIENTATION_LANDSCAPE;
-            } else {
-                if (averageRoll > 0) {
-                    return standard ? SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED : SDLActivity.SDL_ORIENTATION_PORTRAIT;
-                } else {
-                    return standard ? SDLActivity.SDL_ORIENTATION_LANDSCAPE : SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED;
-                }
+            pitchDecides = absRoll < TILT || absPitch >= TILT;
+        }
+
+        if (pitchDecides) {
+            if (upright && absPitch < HYSTERESIS) {
+                // Close to flat, keep the last direction rather than follow the noise
+                return held;
+            }
+            return pitch > 0 ? HELD_DOWN : HELD_UP;
+        } else {
+            if (sideways && absRoll < HYSTERESIS) {
+                return held;
             }
+            return roll > 0 ? HELD_LEFT : HELD_RIGHT;
+        }
+    }
+
+    private int toOrientation(int held) {
+        switch (held) {
+            case HELD_UP:
+                return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT : SDLActivity.SDL_ORIENTATION_LANDSCAPE;
+            case HELD_DOWN:
+                return standard ? SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED : SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED;
+            case HELD_LEFT:
+                return standard ? SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED : SDLActivity.SDL_ORIENTATION_PORTRAIT;
+            case HELD_RIGHT:
+                return standard ? SDLActivity.SDL_ORIENTATION_LANDSCAPE : SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED;
+            default:
+                return SDLActivity.SDL_ORIENTATION_UNKNOWN;
         }
     }
-}
\ No newline at end of file
+}
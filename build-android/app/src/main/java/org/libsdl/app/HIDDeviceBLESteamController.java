@@ -10,6 +10,7 @@ import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.bluetooth.BluetoothGattService;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 
@@ -34,9 +35,12 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
     private boolean mIsChromebook = false;
     private boolean mIsReconnecting = false;
     private boolean mFrozen = false;
+    private boolean mLowLatency = false;
+    private boolean mMtuRequested = false;
     private LinkedList<GattOperation> mOperations;
     GattOperation mCurrentOperation = null;
     private Handler mHandler;
+    private HandlerThread mGattThread;
 
     private static final int TRANSPORT_AUTO = 0;
     private static final int TRANSPORT_BREDR = 1;
@@ -44,6 +48,8 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
 
     private static final int CHROMEBOOK_CONNECTION_CHECK_INTERVAL = 10000;
 
+    private static final int LOW_LATENCY_MTU = 517;
+
     static public final UUID steamControllerService = UUID.fromString("100F6C32-1735-4313-B402-38567131E5F3");
     static public final UUID inputCharacteristic = UUID.fromString("100F6C33-1735-4313-B402-38567131E5F3");
     static public final UUID reportCharacteristic = UUID.fromString("100F6C34-1735-4313-B402-38567131E5F3");
@@ -163,7 +169,15 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         mIsRegistered = false;
         mIsChromebook = mManager.getContext().getPackageManager().hasSystemFeature("org.chromium.arc.device_management");
         mOperations = new LinkedList<GattOperation>();
-        mHandler = new Handler(Looper.getMainLooper());
+        mLowLatency = HIDDeviceManager.isBluetoothLowLatency();
+        if (mLowLatency) {
+            // Keep GATT traffic off the main looper so it isn't queued behind UI work
+            mGattThread = new HandlerThread("hidapi-gatt");
+            mGattThread.start();
+            mHandler = new Handler(mGattThread.getLooper());
+        } else {
+            mHandler = new Handler(Looper.getMainLooper());
+        }
 
         mGatt = connectGatt();
         final HIDDeviceBLESteamController finalThis = this;
@@ -294,6 +308,28 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         mIsRegistered = true;
     }
 
+    // Asks for a short connection interval while playing and a relaxed one while paused
+    private void updateConnectionPriority() {
+        if (!mLowLatency) {
+            return;
+        }
+
+        final boolean frozen = mFrozen;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                BluetoothGatt g = mGatt;
+                if (g == null || !mIsConnected) {
+                    return;
+                }
+                int priority = frozen ? BluetoothGatt.CONNECTION_PRIORITY_BALANCED : BluetoothGatt.CONNECTION_PRIORITY_HIGH;
+                if (!g.requestConnectionPriority(priority)) {
+                    Log.w(TAG, "Unable to request connection priority " + priority);
+                }
+            }
+        });
+    }
+
     private boolean probeService(HIDDeviceBLESteamController controller) {
 
         if (isRegistered()) {
@@ -417,12 +453,18 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         mIsReconnecting = false;
         if (newState == 2) {
             mIsConnected = true;
+            updateConnectionPriority();
             // Run directly, without GattOperation
             if (!isRegistered()) {
                 mHandler.post(new Runnable() {
                     @Override
                     public void run() {
-                        mGatt.discoverServices();
+                        // In low latency mode, discover services once the MTU exchange completes
+                        if (mLowLatency && mGatt.requestMtu(LOW_LATENCY_MTU)) {
+                            mMtuRequested = true;
+                        } else {
+                            mGatt.discoverServices();
+                        }
                     }
                 });
             }
@@ -454,7 +496,7 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         //Log.v(TAG, "onCharacteristicRead status=" + status + " uuid=" + characteristic.getUuid());
 
         if (characteristic.getUuid().equals(reportCharacteristic) && !mFrozen) {
-            mManager.HIDDeviceFeatureReport(getId(), characteristic.getValue());
+            mManager.dispatchFeatureReport(getId(), characteristic.getValue());
         }
 
         finishCurrentGattOperation();
@@ -480,7 +522,7 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         //Log.v(TAG, "onCharacteristicChanged uuid=" + characteristic.getUuid() + " data=" + HexDump.dumpHexString(characteristic.getValue()));
 
         if (characteristic.getUuid().equals(inputCharacteristic) && !mFrozen) {
-            mManager.HIDDeviceInputReport(getId(), characteristic.getValue());
+            mManager.dispatchInputReport(getId(), characteristic.getValue());
         }
     }
 
@@ -515,6 +557,25 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
 
     public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
         //Log.v(TAG, "onMtuChanged status=" + status);
+        if (status == BluetoothGatt.GATT_SUCCESS) {
+            Log.v(TAG, "Negotiated MTU " + mtu + " for Steam Controller");
+        }
+
+        // The larger MTU lets a whole input report fit in one notification.  Writes already work
+        // at any MTU, so nothing else depends on it.  Discovery waits for our own request.
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mMtuRequested) {
+                    return;
+                }
+                mMtuRequested = false;
+                BluetoothGatt g = mGatt;
+                if (g != null && !isRegistered()) {
+                    g.discoverServices();
+                }
+            }
+        });
     }
 
     //////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -619,7 +680,10 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
 
     @Override
     public void setFrozen(boolean frozen) {
-        mFrozen = frozen;
+        if (mFrozen != frozen) {
+            mFrozen = frozen;
+            updateConnectionPriority();
+        }
     }
 
     @Override
@@ -636,6 +700,11 @@ class HIDDeviceBLESteamController extends BluetoothGattCallback implements HIDDe
         mIsRegistered = false;
         mIsConnected = false;
         mOperations.clear();
+
+        if (mGattThread != null) {
+            mGattThread.quitSafely();
+            mGattThread = null;
+        }
     }
 
 }
@@ -19,6 +19,8 @@ import android.hardware.usb.*;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
@@ -29,6 +31,21 @@ public class HIDDeviceManager {
 
     private static HIDDeviceManager sManager;
     private static int sManagerRefCount = 0;
+    private static boolean sBluetoothLowLatency = false;
+
+    /**
+     * Opts Bluetooth controllers in to the low latency connection profile.
+     * This requests a high connection priority and larger MTU while playing,
+     * and runs GATT operations on a dedicated thread. It must be called
+     * before the manager is acquired to affect controllers found at startup.
+     */
+    public static void setBluetoothLowLatency(boolean enabled) {
+        sBluetoothLowLatency = enabled;
+    }
+
+    public static boolean isBluetoothLowLatency() {
+        return sBluetoothLowLatency;
+    }
 
     public static HIDDeviceManager acquire(Context context) {
         if (sManagerRefCount == 0) {
@@ -59,6 +76,7 @@ public class HIDDeviceManager {
     private Handler mHandler;
     private BluetoothManager mBluetoothManager;
     private List<BluetoothDevice> mLastBluetoothDevices;
+    private volatile HIDDeviceRecorder mRecorder;
 
     private final BroadcastReceiver mUsbBroadcast = new BroadcastReceiver() {
         @Override
@@ -523,6 +541,7 @@ public class HIDDeviceManager {
     }
 
     private void close() {
+        stopRecording();
         shutdownUSB();
         shutdownBluetooth();
         synchronized (this) {
@@ -558,6 +577,72 @@ public class HIDDeviceManager {
         }
     }
 
+    //////////////////////////////////////////////////////////////////////////////////////////////////////
+    ////////// Recording and replay
+    //////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    // Starts writing every report that passes through the manager to the given file
+    public boolean startRecording(File file) {
+        stopRecording();
+        try {
+            mRecorder = new HIDDeviceRecorder(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't start HID recording to " + file + ": " + e);
+            return false;
+        }
+        Log.v(TAG, "Recording HID reports to " + file);
+        return true;
+    }
+
+    public void stopRecording() {
+        HIDDeviceRecorder recorder = mRecorder;
+        mRecorder = null;
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    // Adds a fake device that plays back a recorded device. A speed of 1 is the original
+    // pace, larger values are faster, and 0 delivers the reports as fast as possible.
+    public boolean connectReplayDevice(File file, int recordedDeviceID, float speed, boolean loop) {
+        HIDDeviceReplay device;
+        try {
+            device = new HIDDeviceReplay(this, file, recordedDeviceID, speed, loop);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't load HID recording " + file + ": " + e);
+            return false;
+        }
+
+        synchronized (this) {
+            int id = device.getId();
+            mDevicesById.put(id, device);
+            HIDDeviceConnected(id, device.getIdentifier(), device.getVendorId(), device.getProductId(), device.getSerialNumber(), device.getVersion(), device.getManufacturerName(), device.getProductName(), 0);
+        }
+        return true;
+    }
+
+    private void record(int type, int deviceID, byte[] report) {
+        HIDDeviceRecorder recorder = mRecorder;
+        if (recorder != null) {
+            HIDDevice device;
+            synchronized (this) {
+                device = mDevicesById.get(deviceID);
+            }
+            recorder.record(type, device, deviceID, report);
+        }
+    }
+
+    // Called by the devices to pass reports on to the native side
+    void dispatchInputReport(int deviceID, byte[] report) {
+        record(HIDDeviceRecorder.RECORD_INPUT, deviceID, report);
+        HIDDeviceInputReport(deviceID, report);
+    }
+
+    void dispatchFeatureReport(int deviceID, byte[] report) {
+        record(HIDDeviceRecorder.RECORD_FEATURE, deviceID, report);
+        HIDDeviceFeatureReport(deviceID, report);
+    }
+
     //////////////////////////////////////////////////////////////////////////////////////////////////////
     ////////// JNI interface functions
     //////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -607,6 +692,7 @@ public class HIDDeviceManager {
                 return -1;
             }
 
+            record(HIDDeviceRecorder.RECORD_SEND_OUTPUT, deviceID, report);
             return device.sendOutputReport(report);
         } catch (Exception e) {
             Log.e(TAG, "Got exception: " + Log.getStackTraceString(e));
@@ -624,6 +710,7 @@ public class HIDDeviceManager {
                 return -1;
             }
 
+            record(HIDDeviceRecorder.RECORD_SEND_FEATURE, deviceID, report);
             return device.sendFeatureReport(report);
         } catch (Exception e) {
             Log.e(TAG, "Got exception: " + Log.getStackTraceString(e));
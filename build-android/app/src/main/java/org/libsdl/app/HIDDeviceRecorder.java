@@ -0,0 +1,123 @@
+package org.libsdl.app;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+
+/**
+    Writes the HID reports passing through HIDDeviceManager to a compact binary file.
+
+    The file starts with a header (magic, version) followed by a sequence of records.
+    Each record is a type byte, then the time since the previous record in
+    microseconds and the device id as unsigned varints.  Report records then carry a varint
+    length and the report bytes.  Device records carry the device description, and
+    are written the first time a device is seen.  HIDDeviceReplay plays files back.
+*/
+class HIDDeviceRecorder {
+
+    private static final String TAG = "hidapi";
+
+    static final int MAGIC = 0x48494452; // "HIDR"
+    static final int VERSION = 1;
+
+    static final int RECORD_DEVICE = 0;
+    static final int RECORD_INPUT = 1;
+    static final int RECORD_FEATURE = 2;
+    static final int RECORD_SEND_OUTPUT = 3;
+    static final int RECORD_SEND_FEATURE = 4;
+
+    private DataOutputStream mOutput;
+    private HashSet<Integer> mDescribedDevices = new HashSet<Integer>();
+    private long mLastTimestamp;
+
+    public HIDDeviceRecorder(File file) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        mOutput.writeInt(MAGIC);
+        mOutput.writeShort(VERSION);
+        mLastTimestamp = System.nanoTime();
+    }
+
+    public synchronized void record(int type, HIDDevice device, int deviceID, byte[] report) {
+        if (mOutput == null) {
+            return;
+        }
+
+        try {
+            if (device != null && mDescribedDevices.add(deviceID)) {
+                writeHeader(RECORD_DEVICE, deviceID);
+                mOutput.writeShort(device.getVendorId());
+                mOutput.writeShort(device.getProductId());
+                writeVarint(device.getVersion());
+                mOutput.writeUTF(device.getManufacturerName());
+                mOutput.writeUTF(device.getProductName());
+                mOutput.writeUTF(device.getSerialNumber());
+            }
+
+            writeHeader(type, deviceID);
+            writeVarint(report.length);
+            mOutput.write(report);
+        } catch (IOException e) {
+            Log.w(TAG, "Stopping HID recording after write failure: " + e);
+            close();
+        }
+    }
+
+    public synchronized void close() {
+        if (mOutput == null) {
+            return;
+        }
+
+        try {
+            mOutput.close();
+        } catch (IOException e) {
+            // Nothing more we can do
+        }
+        mOutput = null;
+    }
+
+    private void writeHeader(int type, int deviceID) throws IOException {
+        long now = System.nanoTime();
+        long delta = (now - mLastTimestamp) / 1000;
+        mLastTimestamp = now;
+
+        mOutput.writeByte(type);
+        writeVarint(delta);
+        writeVarint(deviceID);
+    }
+
+    private void writeVarint(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            mOutput.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        mOutput.writeByte((int)value);
+    }
+
+    static long readVarint(DataInputStream input) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint in HID recording");
+    }
+
+    static void readHeader(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a HID recording");
+        }
+        int version = input.readUnsignedShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported HID recording version " + version);
+        }
+    }
+}
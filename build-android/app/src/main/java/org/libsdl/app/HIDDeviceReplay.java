@@ -0,0 +1,303 @@
+package org.libsdl.app;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+    A fake HIDDevice that plays back one device from a HIDDeviceRecorder file.
+
+    The recording is loaded into memory up front, so playback does no I/O.  Input
+    reports are fed back through HIDDeviceManager at the recorded pace scaled by the
+    speed factor, or as fast as possible if the speed is zero.  Playback holds while
+    the device is frozen, and a looping replay pauses briefly between passes.  Feature
+    reports were recorded as the replies to getFeatureReport(), so each request is
+    answered with the next one in recorded order.  Reports sent to the device are
+    accepted and dropped.
+*/
+class HIDDeviceReplay implements HIDDevice {
+
+    private static final String TAG = "hidapi";
+
+    // How often a frozen replay checks whether it may go on
+    private static final long FROZEN_POLL_NANOS = 50000000L;
+
+    // The pause between passes when looping
+    private static final long LOOP_PAUSE_NANOS = 16000000L;
+
+    protected HIDDeviceManager mManager;
+    protected File mFile;
+    protected int mDeviceId;
+    protected int mRecordedDeviceId;
+    protected float mSpeed;
+    protected boolean mLoop;
+
+    protected int mVendorId;
+    protected int mProductId;
+    protected int mVersion;
+    protected String mManufacturerName = "";
+    protected String mProductName = "";
+    protected String mSerialNumber = "";
+
+    // The recorded reports for this device, in order
+    protected int mReportCount;
+    protected int[] mTypes;
+    protected long[] mTimestamps;
+    protected byte[][] mReports;
+
+    // The recorded report to look for the next feature report from
+    protected int mNextFeature;
+
+    protected ReplayThread mReplayThread;
+    protected volatile boolean mRunning;
+    protected volatile boolean mFrozen;
+
+    public HIDDeviceReplay(HIDDeviceManager manager, File file, int recordedDeviceID, float speed, boolean loop) throws IOException {
+        mManager = manager;
+        mFile = file;
+        mRecordedDeviceId = recordedDeviceID;
+        mSpeed = speed;
+        mLoop = loop;
+        load();
+        mDeviceId = manager.getDeviceIDForIdentifier(getIdentifier());
+    }
+
+    private void load() throws IOException {
+        ArrayList<Integer> types = new ArrayList<Integer>();
+        ArrayList<Long> timestamps = new ArrayList<Long>();
+        ArrayList<byte[]> reports = new ArrayList<byte[]>();
+        boolean described = false;
+        long timestamp = 0;
+
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            HIDDeviceRecorder.readHeader(input);
+            while (true) {
+                int type;
+                try {
+                    type = input.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                timestamp += HIDDeviceRecorder.readVarint(input);
+                int id = (int)HIDDeviceRecorder.readVarint(input);
+
+                if (type == HIDDeviceRecorder.RECORD_DEVICE) {
+                    int vendorId = input.readUnsignedShort();
+                    int productId = input.readUnsignedShort();
+                    int version = (int)HIDDeviceRecorder.readVarint(input);
+                    String manufacturer = input.readUTF();
+                    String product = input.readUTF();
+                    String serial = input.readUTF();
+                    if (id == mRecordedDeviceId) {
+                        mVendorId = vendorId;
+                        mProductId = productId;
+                        mVersion = version;
+                        mManufacturerName = manufacturer;
+                        mProductName = product;
+                        mSerialNumber = serial;
+                        described = true;
+                    }
+                    continue;
+                }
+
+                byte[] report = new byte[(int)HIDDeviceRecorder.readVarint(input)];
+                input.readFully(report);
+                if (id == mRecordedDeviceId &&
+                    (type == HIDDeviceRecorder.RECORD_INPUT || type == HIDDeviceRecorder.RECORD_FEATURE)) {
+                    types.add(type);
+                    timestamps.add(timestamp);
+                    reports.add(report);
+                }
+            }
+        } finally {
+            input.close();
+        }
+
+        if (!described) {
+            throw new IOException("Device " + mRecordedDeviceId + " not found in HID recording " + mFile);
+        }
+
+        mReportCount = reports.size();
+        mTypes = new int[mReportCount];
+        mTimestamps = new long[mReportCount];
+        mReports = new byte[mReportCount][];
+        for (int i = 0; i < mReportCount; i++) {
+            mTypes[i] = types.get(i);
+            mTimestamps[i] = timestamps.get(i);
+            mReports[i] = reports.get(i);
+        }
+    }
+
+    public String getIdentifier() {
+        return String.format("replay/%s/%d", mFile.getName(), mRecordedDeviceId);
+    }
+
+    public int getReportCount() {
+        return mReportCount;
+    }
+
+    @Override
+    public int getId() {
+        return mDeviceId;
+    }
+
+    @Override
+    public int getVendorId() {
+        return mVendorId;
+    }
+
+    @Override
+    public int getProductId() {
+        return mProductId;
+    }
+
+    @Override
+    public String getSerialNumber() {
+        return mSerialNumber;
+    }
+
+    @Override
+    public int getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public String getManufacturerName() {
+        return mManufacturerName;
+    }
+
+    @Override
+    public String getProductName() {
+        return mProductName;
+    }
+
+    @Override
+    public boolean open() {
+        if (mReplayThread != null) {
+            return true;
+        }
+
+        Log.v(TAG, "Replaying " + mReportCount + " reports from " + mFile + " at speed " + mSpeed);
+        mRunning = true;
+        mReplayThread = new ReplayThread();
+        mReplayThread.start();
+        return true;
+    }
+
+    @Override
+    public int sendFeatureReport(byte[] report) {
+        return report.length;
+    }
+
+    @Override
+    public int sendOutputReport(byte[] report) {
+        return report.length;
+    }
+
+    @Override
+    public synchronized boolean getFeatureReport(byte[] report) {
+        int i = findFeatureReport(mNextFeature);
+        if (i < 0 && mLoop) {
+            i = findFeatureReport(0);
+        }
+        if (i < 0 || mManager == null) {
+            return false;
+        }
+        mNextFeature = i + 1;
+        mManager.dispatchFeatureReport(mDeviceId, mReports[i]);
+        return true;
+    }
+
+    // Returns the index of the first feature report at or after the given one, or -1
+    private int findFeatureReport(int from) {
+        for (int i = from; i < mReportCount; i++) {
+            if (mTypes[i] == HIDDeviceRecorder.RECORD_FEATURE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        mRunning = false;
+        if (mReplayThread != null) {
+            mReplayThread.interrupt();
+            try {
+                mReplayThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mReplayThread = null;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        close();
+        mManager = null;
+    }
+
+    @Override
+    public void setFrozen(boolean frozen) {
+        mFrozen = frozen;
+    }
+
+    protected class ReplayThread extends Thread {
+        public ReplayThread() {
+            super("hidapi-replay");
+        }
+
+        @Override
+        public void run() {
+            HIDDeviceManager manager = mManager;
+            if (mReportCount == 0) {
+                return;
+            }
+
+            while (true) {
+                long start = System.nanoTime();
+                long first = mTimestamps[0];
+                for (int i = 0; i < mReportCount && mRunning; i++) {
+                    if (mFrozen) {
+                        // Hold the reports while frozen, and pick up the pace where we left off
+                        long frozenAt = System.nanoTime();
+                        while (mFrozen && mRunning) {
+                            LockSupport.parkNanos(FROZEN_POLL_NANOS);
+                        }
+                        start += System.nanoTime() - frozenAt;
+                        if (!mRunning) {
+                            break;
+                        }
+                    }
+
+                    if (mSpeed > 0.0f) {
+                        long due = start + (long)((mTimestamps[i] - first) * 1000L / mSpeed);
+                        long wait;
+                        while (mRunning && (wait = due - System.nanoTime()) > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+
+                    if (mTypes[i] == HIDDeviceRecorder.RECORD_INPUT) {
+                        manager.dispatchInputReport(mDeviceId, mReports[i]);
+                    }
+                }
+
+                if (!mLoop || !mRunning) {
+                    break;
+                }
+                // Give the rest of the system a moment between passes, even at speed 0
+                LockSupport.parkNanos(LOOP_PAUSE_NANOS);
+            }
+        }
+    }
+}
@@ -3,12 +3,16 @@ package org.libsdl.app;
 import android.hardware.usb.*;
 import android.os.Build;
 import android.util.Log;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 class HIDDeviceUSB implements HIDDevice {
 
     private static final String TAG = "hidapi";
 
+    // How long close() will wait for the input thread after cancelling its request
+    private static final int INPUT_THREAD_JOIN_TIMEOUT_MS = 5;
+
     protected HIDDeviceManager mManager;
     protected UsbDevice mDevice;
     protected int mInterface;
@@ -16,8 +20,9 @@ class HIDDeviceUSB implements HIDDevice {
     protected UsbDeviceConnection mConnection;
     protected UsbEndpoint mInputEndpoint;
     protected UsbEndpoint mOutputEndpoint;
+    protected UsbRequest mInputRequest;
     protected InputThread mInputThread;
-    protected boolean mRunning;
+    protected volatile boolean mRunning;
     protected boolean mFrozen;
 
     public HIDDeviceUSB(HIDDeviceManager manager, UsbDevice usbDevice, int interface_number) {
@@ -140,6 +145,17 @@ class HIDDeviceUSB implements HIDDevice {
             return false;
         }
 
+        // Input is read through an asynchronous request, so that close() can cancel it
+        // instead of waiting for a blocking bulkTransfer() to time out.
+        mInputRequest = new UsbRequest();
+        if (!mInputRequest.initialize(mConnection, mInputEndpoint)) {
+            Log.w(TAG, "Failed to initialize input request on USB device " + getDeviceName());
+            mInputRequest.close();
+            mInputRequest = null;
+            close();
+            return false;
+        }
+
         // Start listening for input
         mRunning = true;
         mInputThread = new InputThread();
@@ -230,7 +246,7 @@ class HIDDeviceUSB implements HIDDevice {
         } else {
             data = Arrays.copyOfRange(report, 0, res);
         }
-        mManager.HIDDeviceFeatureReport(mDeviceId, data);
+        mManager.dispatchFeatureReport(mDeviceId, data);
 
         return true;
     }
@@ -238,25 +254,43 @@ class HIDDeviceUSB implements HIDDevice {
     @Override
     public void close() {
         mRunning = false;
-        if (mInputThread != null) {
-            while (mInputThread.isAlive()) {
-                mInputThread.interrupt();
-                try {
-                    mInputThread.join();
-                } catch (InterruptedException e) {
-                    // Keep trying until we're done
-                }
+        Thread inputThread = mInputThread;
+        mInputThread = null;
+        if (inputThread != null) {
+            // Wake the input thread up by cancelling its outstanding request
+            if (mInputRequest != null) {
+                mInputRequest.cancel();
             }
-            mInputThread = null;
+            joinInputThread(inputThread);
         }
         if (mConnection != null) {
             for (int i = 0; i < mDevice.getInterfaceCount(); i++) {
                 UsbInterface iface = mDevice.getInterface(i);
                 mConnection.releaseInterface(iface);
             }
+            // Closing the connection also fails any transfer that ignored the cancel
             mConnection.close();
             mConnection = null;
         }
+        if (inputThread != null && inputThread.isAlive()) {
+            joinInputThread(inputThread);
+            if (inputThread.isAlive()) {
+                Log.w(TAG, "Input thread still running after close on device " + getDeviceName());
+            }
+        }
+        if (mInputRequest != null && (inputThread == null || !inputThread.isAlive())) {
+            mInputRequest.close();
+        }
+        mInputRequest = null;
+    }
+
+    private void joinInputThread(Thread inputThread) {
+        try {
+            inputThread.join(INPUT_THREAD_JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            // Don't hold up the caller any longer
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -273,32 +307,48 @@ class HIDDeviceUSB implements HIDDevice {
     protected class InputThread extends Thread {
         @Override
         public void run() {
+            SDLThreads.registerCurrentThread(SDLThreads.ROLE_INPUT);
+            HIDDeviceManager manager = mManager;
+            UsbDeviceConnection connection = mConnection;
+            UsbRequest request = mInputRequest;
             int packetSize = mInputEndpoint.getMaxPacketSize();
             byte[] packet = new byte[packetSize];
+            ByteBuffer buffer = ByteBuffer.wrap(packet);
             while (mRunning) {
-                int r;
+                UsbRequest r;
                 try
                 {
-                    r = mConnection.bulkTransfer(mInputEndpoint, packet, packetSize, 1000);
+                    buffer.clear();
+                    if (!request.queue(buffer, packetSize)) {
+                        Log.v(TAG, "Unable to queue input request");
+                        break;
+                    }
+                    r = connection.requestWait();
                 }
                 catch (Exception e)
                 {
-                    Log.v(TAG, "Exception in UsbDeviceConnection bulktransfer: " + e);
+                    Log.v(TAG, "Exception in UsbDeviceConnection requestWait: " + e);
+                    break;
+                }
+                if (r == null) {
+                    // The connection was closed or hit an I/O error
                     break;
                 }
-                if (r < 0) {
-                    // Could be a timeout or an I/O error
+                if (!mRunning) {
+                    // The request was cancelled by close()
+                    break;
                 }
-                if (r > 0) {
+                int length = buffer.position();
+                if (length > 0) {
                     byte[] data;
-                    if (r == packetSize) {
+                    if (length == packetSize) {
                         data = packet;
                     } else {
-                        data = Arrays.copyOfRange(packet, 0, r);
+                        data = Arrays.copyOfRange(packet, 0, length);
                     }
 
                     if (!mFrozen) {
-                        mManager.HIDDeviceInputReport(mDeviceId, data);
+                        manager.dispatchInputReport(mDeviceId, data);
                     }
                 }
             }
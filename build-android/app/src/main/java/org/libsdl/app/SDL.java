@@ -51,20 +51,13 @@ public class SDL {
             // To use ReLinker, just add it as a dependency.  For more information, see 
             // https://github.com/KeepSafe/ReLinker for ReLinker's repository.
             //
-            Class relinkClass = mContext.getClassLoader().loadClass("com.getkeepsafe.relinker.ReLinker");
-            Class relinkListenerClass = mContext.getClassLoader().loadClass("com.getkeepsafe.relinker.ReLinker$LoadListener");
-            Class contextClass = mContext.getClassLoader().loadClass("android.content.Context");
-            Class stringClass = mContext.getClassLoader().loadClass("java.lang.String");
-
-            // Get a 'force' instance of the ReLinker, so we can ensure libraries are reinstalled if 
-            // they've changed during updates.
-            Method forceMethod = relinkClass.getDeclaredMethod("force");
-            Object relinkInstance = forceMethod.invoke(null);
-            Class relinkInstanceClass = relinkInstance.getClass();
+            resolveReLinker();
+            if (mReLinkerLoadMethod == null) {
+                throw new ClassNotFoundException("ReLinker is not available");
+            }
 
             // Actually load the library!
-            Method loadMethod = relinkInstanceClass.getDeclaredMethod("loadLibrary", contextClass, stringClass, stringClass, relinkListenerClass);
-            loadMethod.invoke(relinkInstance, mContext, libraryName, null, null);
+            mReLinkerLoadMethod.invoke(mReLinkerInstance, mContext, libraryName, null, null);
         }
         catch (final Throwable e) {
             // Fall back
@@ -80,5 +73,33 @@ public class SDL {
         }        
     }
 
+    // Looks up ReLinker once, rather than repeating the reflection for every library
+    private static synchronized void resolveReLinker() throws Exception {
+        if (mReLinkerResolved) {
+            return;
+        }
+        mReLinkerResolved = true;
+
+        ClassLoader loader = SDL.class.getClassLoader();
+        Class relinkClass = loader.loadClass("com.getkeepsafe.relinker.ReLinker");
+        Class relinkListenerClass = loader.loadClass("com.getkeepsafe.relinker.ReLinker$LoadListener");
+        Class contextClass = loader.loadClass("android.content.Context");
+        Class stringClass = loader.loadClass("java.lang.String");
+
+        // Get a 'force' instance of the ReLinker, so we can ensure libraries are reinstalled if 
+        // they've changed during updates.
+        Method forceMethod = relinkClass.getDeclaredMethod("force");
+        Object relinkInstance = forceMethod.invoke(null);
+        Class relinkInstanceClass = relinkInstance.getClass();
+
+        mReLinkerLoadMethod = relinkInstanceClass.getDeclaredMethod("loadLibrary", contextClass, stringClass, stringClass, relinkListenerClass);
+        mReLinkerInstance = relinkInstance;
+    }
+
     protected static Context mContext;
+
+    // The ReLinker instance and its loadLibrary method, or null if ReLinker isn't available
+    private static boolean mReLinkerResolved;
+    private static Object mReLinkerInstance;
+    private static Method mReLinkerLoadMethod;
 }
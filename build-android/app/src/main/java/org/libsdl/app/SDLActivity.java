@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.reflect.Method;
 import java.lang.Math;
 
 import android.app.*;
 import android.content.*;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.text.InputType;
@@ -28,6 +30,10 @@ import android.util.SparseArray;
 import android.graphics.*;
 import android.graphics.drawable.Drawable;
 import android.hardware.*;
+import android.opengl.EGL14;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
 import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ApplicationInfo;
@@ -66,9 +72,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     // wmw2 BEGIN
 	// Extra members for orientation detection
     protected static SensorManager mSensorManager;
-	protected static Sensor mAccelerometer;
- 	protected static Sensor mMagnetometer;
- 	protected static DeviceOrientation mDeviceOrientation;
+	protected static DeviceOrientation mDeviceOrientation;
     protected static int mInitialOrientation;
     protected static int mDefaultOrientation;
     // wmw2 END
@@ -87,6 +91,9 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     /** If shared libraries (e.g. SDL or the native application) could not be loaded. */
     public static boolean mBrokenLibraries;
 
+    /** If the shared libraries have been loaded and the activity set up around them. */
+    public static boolean mLibrariesLoaded;
+
     // If we want to separate mouse and touch events.
     //  This is only toggled in native code when a hint is set!
     public static boolean mSeparateMouseAndTouch;
@@ -106,6 +113,38 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     // This is what SDL runs in. It invokes SDL_main(), eventually
     protected static Thread mSDLThread;
 
+    // Loads the shared libraries in the background during onCreate
+    protected SDLLibraryLoader mLibraryLoader;
+
+    // Whether the activity is between onResume and onPause, tracked even while loading
+    protected boolean mActivityResumed;
+
+    // Reads the assets in the background so they are cached by the time native code loads them
+    protected SDLAssetPrefetcher mAssetPrefetcher;
+
+    // Memory pressure grades, from the onTrimMemory levels, for caches to evict progressively
+    public static final int MEMORY_PRESSURE_NONE = 0;
+    public static final int MEMORY_PRESSURE_MODERATE = 1;
+    public static final int MEMORY_PRESSURE_LOW = 2;
+    public static final int MEMORY_PRESSURE_CRITICAL = 3;
+
+    // The highest grade since native code last polled, and the last onTrimMemory level
+    protected static final AtomicInteger mMemoryPressure = new AtomicInteger();
+    protected static volatile int mTrimLevel;
+    protected static ActivityManager.MemoryInfo mMemoryInfo;
+
+    // The number of window surfaces created so far, counted on the UI thread
+    protected static volatile int mSurfaceGeneration;
+
+    // Vsync timestamps for native frame pacing, running while the native side is resumed
+    protected static SDLFrameClock mFrameClock;
+
+    // Frame timing statistics, fed by the frame clock and by native code
+    protected static final SDLFrameStats mFrameStats = new SDLFrameStats();
+
+    // The frame interval native code aims for, 0 to follow the refresh rate
+    protected static volatile long mAppFrameDuration;
+
     protected static SDLGenericMotionListener_API12 getMotionListener() {
         if (mMotionListener == null) {
             if (Build.VERSION.SDK_INT >= 26) {
@@ -149,7 +188,8 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
      * It can be overridden to provide names of shared libraries to be loaded.
      * The default implementation returns the defaults. It never returns null.
      * An array returned by a new implementation must at least contain "SDL2".
-     * Also keep in mind that the order the libraries are loaded may matter.
+     * Also keep in mind that the order the libraries are loaded may matter: SDLLibraryLoader
+     * loads the first one first and the last one last, and the ones in between concurrently.
      * @return names of shared libraries to be loaded (e.g. "SDL2", "main").
      */
     protected String[] getLibraries() {
@@ -162,11 +202,228 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         };
     }
 
-    // Load the .so
-    public void loadLibraries() {
-       for (String lib : getLibraries()) {
-          SDL.loadLibrary(lib);
-       }
+    /**
+     * This method is called by SDL before starting the asset prefetcher.
+     * It can be overridden to provide the manifest of assets to read ahead.
+     * Every "file" entry in the JSON manifest is read, in order.
+     * @return path of the manifest in the asset directory, or null to not prefetch.
+     */
+    protected String getAssetManifest() {
+        return "json/assets.json";
+    }
+
+    /**
+     * Returns the per-library load timings from startup, or an empty string
+     * if the libraries haven't been loaded by this activity.
+     */
+    public String getLibraryTimings() {
+        if (mLibraryLoader == null || !mLibraryLoader.isFinished()) {
+            return "";
+        }
+        return mLibraryLoader.getTimings();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Moves assets to the front of the prefetch queue, e.g. those of the next scene.
+     * @param names manifest keys or asset paths.
+     */
+    public static void prefetchAssets(String[] names) {
+        if (mSingleton != null && mSingleton.mAssetPrefetcher != null) {
+            mSingleton.mAssetPrefetcher.prioritize(names);
+        }
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the fraction of the manifest assets prefetched so far, from 0 to 1.
+     */
+    public static float getAssetPrefetchProgress() {
+        if (mSingleton == null || mSingleton.mAssetPrefetcher == null) {
+            return 1.0f;
+        }
+        return mSingleton.mAssetPrefetcher.getProgress();
+    }
+
+    /**
+     * This method is called from native code using JNI, after the application draws its
+     * first frame.  Marks the first frame presented, completing the startup timings.
+     */
+    public static void firstFramePresented() {
+        if (!SDLStartupTrace.isRecorded(SDLStartupTrace.PHASE_FIRST_FRAME)) {
+            SDLStartupTrace.mark(SDLStartupTrace.PHASE_FIRST_FRAME);
+            SDLStartupTrace.log();
+        }
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the startup phases recorded so far, one per line, as "name: start+duration ms".
+     */
+    public static String getStartupTimings() {
+        return SDLStartupTrace.getTimings();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Returns the highest memory pressure grade reported since the last call, and clears it.
+     * @return one of the MEMORY_PRESSURE_* grades.
+     */
+    public static int pollMemoryPressure() {
+        return mMemoryPressure.getAndSet(MEMORY_PRESSURE_NONE);
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the last onTrimMemory level, or 0 if there has been none.
+     */
+    public static int getMemoryTrimLevel() {
+        return mTrimLevel;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Returns how much memory the system has left, so caches can be sized to fit.
+     * The headroom is the available memory above the point where the system starts
+     * killing background processes, and is negative once below it.
+     * @return {headroom, available, total, low memory flag} in bytes, or null if unknown.
+     */
+    public static synchronized long[] getMemoryInfo() {
+        Context context = SDL.getContext();
+        if (context == null) {
+            return null;
+        }
+        ActivityManager manager = (ActivityManager)context.getSystemService(Context.ACTIVITY_SERVICE);
+        if (manager == null) {
+            return null;
+        }
+        if (mMemoryInfo == null) {
+            mMemoryInfo = new ActivityManager.MemoryInfo();
+        }
+        manager.getMemoryInfo(mMemoryInfo);
+        return new long[] { mMemoryInfo.availMem - mMemoryInfo.threshold, mMemoryInfo.availMem,
+                            mMemoryInfo.totalMem, mMemoryInfo.lowMemory ? 1 : 0 };
+    }
+
+    /**
+     * Native code may call this over JNI, on the thread that owns the GL context.
+     * Tells whether the GL context current on this thread is still usable.  The context is
+     * made current again, which fails with EGL_CONTEXT_LOST once the driver has dropped it,
+     * e.g. after a power management event.  SDL recreates a lost context by itself when it
+     * resumes and then posts SDL_RENDER_DEVICE_RESET, so native code reloads its textures
+     * and buffers on that event or when this method returns false.
+     * @return true if the current context is valid.
+     */
+    public static boolean isGLContextPreserved() {
+        EGLContext context = EGL14.eglGetCurrentContext();
+        if (EGL14.EGL_NO_CONTEXT.equals(context)) {
+            return false;
+        }
+        EGLDisplay display = EGL14.eglGetCurrentDisplay();
+        EGLSurface draw = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW);
+        EGLSurface read = EGL14.eglGetCurrentSurface(EGL14.EGL_READ);
+        if (!EGL14.eglMakeCurrent(display, draw, read, context)) {
+            int error = EGL14.eglGetError();
+            if (error == EGL14.EGL_CONTEXT_LOST) {
+                Log.v(TAG, "GL context lost");
+            } else {
+                Log.w(TAG, "eglMakeCurrent failed: 0x" + Integer.toHexString(error));
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * The window surface is recreated whenever the activity comes back from the background,
+     * while the GL context normally survives.  A change here without a lost context means
+     * only the EGL window surface was rebuilt, which SDL does by itself.
+     * @return the number of window surfaces created since startup.
+     */
+    public static int getSurfaceGeneration() {
+        return mSurfaceGeneration;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Copies the latest vsync timing into the given array, which native code allocates once
+     * and passes every frame.  See SDLFrameClock for the layout.
+     * @return false if there is no timing yet, in which case the array is left unchanged.
+     */
+    public static boolean getVsyncTiming(long[] timing) {
+        SDLFrameClock clock = mFrameClock;
+        if (clock == null) {
+            return false;
+        }
+        clock.getTiming(timing);
+        return true;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Blocks until the vsync after the given frame count, so the render loop can start its
+     * frame right after vsync instead of at an arbitrary point in the interval.
+     * @return the current frame count, or -1 if the activity is paused.
+     */
+    public static long waitForVsync(long frameCount, int timeoutMs) {
+        SDLFrameClock clock = mFrameClock;
+        if (clock == null) {
+            return -1;
+        }
+        return clock.awaitFrame(frameCount, timeoutMs);
+    }
+
+    /**
+     * This method is called from native code using JNI, once per frame.
+     * Records a frame for the frame statistics, and passes the time spent on it to the
+     * render scale controller and to the performance hint session of the render threads,
+     * so one call per frame serves all three.
+     * @param startNanos when the frame started, from clock_gettime(CLOCK_MONOTONIC).
+     * @param endNanos when the frame was submitted, from the same clock.
+     */
+    public static void reportFrame(long startNanos, long endNanos) {
+        // A game capped below the refresh rate is only janky past its own frame interval
+        long target = getTargetFrameInterval();
+        mFrameStats.addFrame(startNanos, endNanos, target);
+        long nanos = endNanos - startNanos;
+        updateRenderScale(nanos / 1000000.0f);
+        // Follows refresh rate changes, and only reaches the session when the target moves
+        SDLThreads.setTargetFrameDuration(target);
+        SDLThreads.reportFrameDuration(nanos);
+    }
+
+    // The interval between frames the game aims for: the vsync period, or longer when
+    // native code caps its frame rate below the refresh rate
+    static long getTargetFrameInterval() {
+        SDLFrameClock clock = mFrameClock;
+        return Math.max(clock != null ? clock.getPeriod() : 0, mAppFrameDuration);
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Copies the frame statistics into the given array, e.g. for a debug overlay.
+     * See SDLFrameStats for the layout.
+     */
+    public static void getFrameStats(float[] stats) {
+        mFrameStats.getStats(stats);
+    }
+
+    /**
+     * This method is called from native code using JNI.
+     * Starts collecting frame statistics for a new section, such as a level.
+     */
+    public static void beginFrameStats(String label) {
+        mFrameStats.begin(label);
+    }
+
+    /**
+     * This method is called from native code using JNI.
+     * Logs the frame statistics of the section, e.g. at the end of a level.
+     * @return the summary that was logged.
+     */
+    public static String endFrameStats() {
+        return mFrameStats.log();
     }
 
     /**
@@ -192,16 +449,23 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         mSDLThread = null;
         mExitCalledFromJava = false;
         mBrokenLibraries = false;
+        mLibrariesLoaded = false;
         mIsResumedCalled = false;
         mIsSurfaceReady = false;
         mHasFocus = true;
         mNextNativeState = NativeState.INIT;
         mCurrentNativeState = NativeState.INIT;
+        mMemoryPressure.set(MEMORY_PRESSURE_NONE);
+        mTrimLevel = 0;
+        mSurfaceGeneration = 0;
+        mFrameClock = null;
+        mSurfaceFrameRate = 0;
+        mRenderScale = 1.0f;
+        mRenderScaleController = null;
+        mThermalMonitor = null;
 
 		// wmw2 BEGIN
 		mSensorManager = null;
-	 	mAccelerometer = null;
- 		mMagnetometer  = null;
 		mDeviceOrientation = null;
     	mInitialOrientation = -1;
     	mDefaultOrientation = -1;
@@ -214,20 +478,40 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         Log.v(TAG, "Device: " + Build.DEVICE);
         Log.v(TAG, "Model: " + Build.MODEL);
         Log.v(TAG, "onCreate()");
+        SDLStartupTrace.start();
         super.onCreate(savedInstanceState);
 
-        // Load shared libraries
+        // Load shared libraries in the background.  The surface and everything else
+        // that needs native code is set up in onLibrariesLoaded() once they are in.
+        SDL.setContext(this);
+        mLibraryLoader = new SDLLibraryLoader(getLibraries());
+        mLibraryLoader.start(new Runnable() {
+            @Override
+            public void run() {
+                onLibrariesLoaded();
+            }
+        });
+
+        // Warm up the assets while the libraries load
+        String manifest = getAssetManifest();
+        if (manifest != null) {
+            mAssetPrefetcher = new SDLAssetPrefetcher(getAssets(), manifest, 2);
+            mAssetPrefetcher.start();
+        }
+    }
+
+    // Finishes setup on the UI thread once the shared libraries have been loaded
+    protected void onLibrariesLoaded() {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+
         String errorMsgBrokenLib = "";
-        try {
-            loadLibraries();
-        } catch(UnsatisfiedLinkError e) {
-            System.err.println(e.getMessage());
+        Throwable error = mLibraryLoader.getError();
+        if (error != null) {
+            System.err.println(error.getMessage());
             mBrokenLibraries = true;
-            errorMsgBrokenLib = e.getMessage();
-        } catch(Exception e) {
-            System.err.println(e.getMessage());
-            mBrokenLibraries = true;
-            errorMsgBrokenLib = e.getMessage();
+            errorMsgBrokenLib = error.getMessage();
         }
 
         if (mBrokenLibraries)
@@ -253,6 +537,8 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
            return;
         }
 
+        SDLStartupTrace.begin(SDLStartupTrace.PHASE_LAYOUT);
+
         // Set up JNI
         SDL.setupJNI();
 
@@ -303,12 +589,20 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         
 		//  wmw2 BEGIN
 		mSensorManager = (SensorManager)getSystemService(SENSOR_SERVICE);
-		mAccelerometer = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-		mMagnetometer  = mSensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
-		mDeviceOrientation = new DeviceOrientation(mDefaultOrientation == SDL_ORIENTATION_PORTRAIT);
+		mDeviceOrientation = new DeviceOrientation(mSensorManager, mDefaultOrientation == SDL_ORIENTATION_PORTRAIT);
 		mInitialOrientation = mCurrentOrientation;
 		//  wmw2 END
 
+        SDLStartupTrace.end(SDLStartupTrace.PHASE_LAYOUT);
+        mLibrariesLoaded = true;
+
+        // Catch up with the lifecycle callbacks that arrived while loading
+        mHasFocus = hasWindowFocus();
+        if (mActivityResumed) {
+            resumeActivity();
+        } else if (mHIDDeviceManager != null) {
+            mHIDDeviceManager.setFrozen(true);
+        }
     }
 
     // Events
@@ -316,10 +610,11 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     protected void onPause() {
         Log.v(TAG, "onPause()");
         super.onPause();
+        mActivityResumed = false;
         mNextNativeState = NativeState.PAUSED;
         mIsResumedCalled = false;
 
-        if (SDLActivity.mBrokenLibraries) {
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
            return;
         }
 
@@ -328,7 +623,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         }
         
 		// wmw2 BEGIN
-        mSensorManager.unregisterListener(mDeviceOrientation.getEventListener());
+        mDeviceOrientation.stop();
 		// wmw2 END		
 
         SDLActivity.handleNativeState();
@@ -338,10 +633,15 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     protected void onResume() {
         Log.v(TAG, "onResume()");
         super.onResume();
+        mActivityResumed = true;
+        resumeActivity();
+    }
+
+    private void resumeActivity() {
         mNextNativeState = NativeState.RESUMED;
         mIsResumedCalled = true;
 
-        if (SDLActivity.mBrokenLibraries) {
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
            return;
         }
 
@@ -350,22 +650,27 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         }
         
 		// wmw2 BEGIN
-		mSensorManager.registerListener(mDeviceOrientation.getEventListener(), mAccelerometer, SensorManager.SENSOR_DELAY_UI);
-		mSensorManager.registerListener(mDeviceOrientation.getEventListener(), mMagnetometer,  SensorManager.SENSOR_DELAY_UI);
+		mDeviceOrientation.start();
 		// wmw2 END
 
         SDLActivity.handleNativeState();
     }
 
     public static int getCurrentOrientation() {
-        final Context context = SDLActivity.getContext();
-        final Display display = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-		
+        // Native code polls this every frame, so use the rotation the sensors keep up to date
+        int rotation;
+        if (SDLSurface.mSensors != null) {
+            rotation = SDLSurface.mSensors.getRotation();
+        } else {
+            final Context context = SDLActivity.getContext();
+            rotation = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRotation();
+        }
+
 		// Because some home buttons are in landscape mode
 		int result = mDefaultOrientation;
 		boolean standard = mDefaultOrientation == SDL_ORIENTATION_PORTRAIT;
 		//System.out.println("Default is standard "+standard);
-        switch (display.getRotation()) {
+        switch (rotation) {
             case Surface.ROTATION_0:
                 result = standard ? SDL_ORIENTATION_PORTRAIT : SDL_ORIENTATION_LANDSCAPE;
                 break;
@@ -430,7 +735,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         super.onWindowFocusChanged(hasFocus);
         Log.v(TAG, "onWindowFocusChanged(): " + hasFocus);
 
-        if (SDLActivity.mBrokenLibraries) {
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
            return;
         }
 
@@ -450,23 +755,73 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         Log.v(TAG, "onLowMemory()");
         super.onLowMemory();
 
-        if (SDLActivity.mBrokenLibraries) {
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
            return;
         }
 
+        SDLActivity.mMemoryPressure.set(MEMORY_PRESSURE_CRITICAL);
         SDLActivity.nativeLowMemory();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        Log.v(TAG, "onTrimMemory(): " + level);
+        super.onTrimMemory(level);
+
+        int pressure = getMemoryPressure(level);
+        SDLActivity.mTrimLevel = level;
+        int previous;
+        do {
+            previous = SDLActivity.mMemoryPressure.get();
+        } while (previous < pressure && !SDLActivity.mMemoryPressure.compareAndSet(previous, pressure));
+
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
+           return;
+        }
+
+        // Native code only polls while running, so critical levels are also sent the way
+        // onLowMemory() is, which reaches the application even in the background
+        if (pressure == MEMORY_PRESSURE_CRITICAL) {
+            SDLActivity.nativeLowMemory();
+        }
+    }
+
+    /**
+     * Returns the memory pressure grade for an onTrimMemory level.
+     * It can be overridden by derived classes to grade levels differently.
+     */
+    protected int getMemoryPressure(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return MEMORY_PRESSURE_CRITICAL;        // Next in line to be killed
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return MEMORY_PRESSURE_LOW;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return MEMORY_PRESSURE_MODERATE;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return MEMORY_PRESSURE_CRITICAL;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return MEMORY_PRESSURE_LOW;
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return MEMORY_PRESSURE_MODERATE;
+        }
+        return MEMORY_PRESSURE_NONE;
+    }
+
     @Override
     protected void onDestroy() {
         Log.v(TAG, "onDestroy()");
 
+        if (mAssetPrefetcher != null) {
+            mAssetPrefetcher.cancel();
+            mAssetPrefetcher = null;
+        }
+
         if (mHIDDeviceManager != null) {
             HIDDeviceManager.release(mHIDDeviceManager);
             mHIDDeviceManager = null;
         }
 
-        if (SDLActivity.mBrokenLibraries) {
+        if (SDLActivity.mBrokenLibraries || !SDLActivity.mLibrariesLoaded) {
            super.onDestroy();
            // Reset everything in case the user re opens the app
            SDLActivity.initialize();
@@ -505,10 +860,12 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         // If we do, the normal hardware back button will no longer work and people have to use home,
         // but the mouse right click will work.
         //
-        String trapBack = SDLActivity.nativeGetHint("SDL_ANDROID_TRAP_BACK_BUTTON");
-        if ((trapBack != null) && trapBack.equals("1")) {
-            // Exit and let the mouse handler handle this button (if appropriate)
-            return;
+        if (SDLActivity.mLibrariesLoaded) {
+            String trapBack = SDLActivity.nativeGetHint("SDL_ANDROID_TRAP_BACK_BUTTON");
+            if ((trapBack != null) && trapBack.equals("1")) {
+                // Exit and let the mouse handler handle this button (if appropriate)
+                return;
+            }
         }
 
         // Default system back button behavior.
@@ -575,6 +932,11 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
             nativePause();
             if (mSurface != null)
                 mSurface.handlePause();
+            if (mFrameClock != null)
+                mFrameClock.stop();
+            mFrameStats.pause();
+            if (mThermalMonitor != null)
+                mThermalMonitor.stop();
             mCurrentNativeState = mNextNativeState;
             return;
         }
@@ -594,6 +956,13 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
 
                 nativeResume();
                 mSurface.handleResume();
+                if (mFrameClock == null) {
+                    mFrameClock = new SDLFrameClock(mSingleton);
+                    mFrameClock.setFrameStats(mFrameStats);
+                }
+                mFrameClock.start();
+                SDLThreads.setTargetFrameDuration(getTargetFrameInterval());
+                getThermalMonitor().start();
                 mCurrentNativeState = mNextNativeState;
             }
         }
@@ -613,6 +982,10 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     static final int COMMAND_CHANGE_WINDOW_STYLE = 2;
     static final int COMMAND_TEXTEDIT_HIDE = 3;
     static final int COMMAND_SET_KEEP_SCREEN_ON = 5;
+    static final int COMMAND_SET_DISPLAY_MODE = 6;
+    static final int COMMAND_SET_FRAME_RATE = 7;
+    static final int COMMAND_SET_RENDER_SCALE = 8;
+    static final int COMMAND_SET_SUSTAINED_PERFORMANCE = 9;
 
     protected static final int COMMAND_USER = 0x8000;
 
@@ -634,19 +1007,26 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
      * A Handler class for Messages from native SDL applications.
      * It uses current Activities as target (e.g. for the title).
      * static to prevent implicit references to enclosing object.
+     * Commands arrive through the command queue, or as Messages with the command in arg1.
      */
-    protected static class SDLCommandHandler extends Handler {
+    protected static class SDLCommandHandler extends Handler implements SDLCommandQueue.Receiver {
         @Override
         public void handleMessage(Message msg) {
+            int param = (msg.obj instanceof Integer) ? ((Integer) msg.obj).intValue() : 0;
+            onCommand(msg.arg1, param, msg.obj);
+        }
+
+        @Override
+        public void onCommand(int command, int param, Object obj) {
             Context context = SDL.getContext();
             if (context == null) {
                 Log.e(TAG, "error handling message, getContext() returned null");
                 return;
             }
-            switch (msg.arg1) {
+            switch (command) {
             case COMMAND_CHANGE_TITLE:
                 if (context instanceof Activity) {
-                    ((Activity) context).setTitle((String)msg.obj);
+                    ((Activity) context).setTitle((String)obj);
                 } else {
                     Log.e(TAG, "error handling message, getContext() returned no Activity");
                 }
@@ -659,7 +1039,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
                 if (context instanceof Activity) {
                     Window window = ((Activity) context).getWindow();
                     if (window != null) {
-                        if ((msg.obj instanceof Integer) && (((Integer) msg.obj).intValue() != 0)) {
+                        if (param != 0) {
                             int flags = View.SYSTEM_UI_FLAG_FULLSCREEN |
                                         View.SYSTEM_UI_FLAG_HIDE_NAVIGATION |
                                         View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
@@ -700,7 +1080,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
                 if (context instanceof Activity) {
                     Window window = ((Activity) context).getWindow();
                     if (window != null) {
-                        if ((msg.obj instanceof Integer) && (((Integer) msg.obj).intValue() != 0)) {
+                        if (param != 0) {
                             window.addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
                         } else {
                             window.clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
@@ -709,23 +1089,92 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
                 }
                 break;
             }
+            case COMMAND_SET_DISPLAY_MODE:
+            {
+                if (Build.VERSION.SDK_INT >= 23 && context instanceof Activity) {
+                    Window window = ((Activity) context).getWindow();
+                    if (window != null) {
+                        WindowManager.LayoutParams params = window.getAttributes();
+                        params.preferredDisplayModeId = param;
+                        window.setAttributes(params);
+                    }
+                }
+                break;
+            }
+            case COMMAND_SET_FRAME_RATE:
+            {
+                if (mSurface != null) {
+                    setSurfaceFrameRate(mSurface.getNativeSurface(), Float.intBitsToFloat(param));
+                }
+                break;
+            }
+            case COMMAND_SET_RENDER_SCALE:
+            {
+                if (mSurface != null) {
+                    mSurface.applyRenderScale();
+                }
+                break;
+            }
+            case COMMAND_SET_SUSTAINED_PERFORMANCE:
+            {
+                if (Build.VERSION.SDK_INT >= 24 && context instanceof Activity) {
+                    Window window = ((Activity) context).getWindow();
+                    if (window != null) {
+                        window.setSustainedPerformanceMode(param != 0);
+                    }
+                }
+                break;
+            }
             default:
-                if ((context instanceof SDLActivity) && !((SDLActivity) context).onUnhandledMessage(msg.arg1, msg.obj)) {
-                    Log.e(TAG, "error handling message, command is " + msg.arg1);
+                if ((context instanceof SDLActivity) &&
+                    !((SDLActivity) context).onUnhandledMessage(command, obj != null ? obj : Integer.valueOf(param))) {
+                    Log.e(TAG, "error handling message, command is " + command);
                 }
             }
         }
     }
 
     // Handler for the messages
-    Handler commandHandler = new SDLCommandHandler();
+    SDLCommandHandler commandHandler = new SDLCommandHandler();
+
+    // Commands from the SDLMain thread, handled in batches by commandHandler
+    protected static final int COMMAND_QUEUE_SIZE = 64;
+    SDLCommandQueue commandQueue = new SDLCommandQueue(commandHandler, commandHandler, COMMAND_QUEUE_SIZE);
+
+    // Commands that set a state, where a newer one makes a pending one redundant
+    protected static boolean isStateCommand(int command) {
+        switch (command) {
+        case COMMAND_CHANGE_TITLE:
+        case COMMAND_CHANGE_WINDOW_STYLE:
+        case COMMAND_TEXTEDIT_HIDE:
+        case COMMAND_SET_KEEP_SCREEN_ON:
+        case COMMAND_SET_DISPLAY_MODE:
+        case COMMAND_SET_FRAME_RATE:
+        case COMMAND_SET_RENDER_SCALE:
+        case COMMAND_SET_SUSTAINED_PERFORMANCE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
 
-    // Send a message from the SDLMain thread
+    // Send a message from the SDLMain thread.  The Integer or Float parameter of a built-in
+    // command is unpacked, user commands get their object back in onUnhandledMessage().
     boolean sendCommand(int command, Object data) {
-        Message msg = commandHandler.obtainMessage();
-        msg.arg1 = command;
-        msg.obj = data;
-        boolean result = commandHandler.sendMessage(msg);
+        if (command < COMMAND_USER) {
+            if (data instanceof Integer) {
+                return sendCommand(command, ((Integer) data).intValue(), null);
+            } else if (data instanceof Float) {
+                return sendCommand(command, Float.floatToIntBits(((Float) data).floatValue()), null);
+            }
+        }
+        return sendCommand(command, 0, data);
+    }
+
+    // Send a message from the SDLMain thread without boxing its parameter
+    boolean sendCommand(int command, int param, Object obj) {
+        boolean result = commandQueue.post(command, param, obj, isStateCommand(command));
 
         if ((Build.VERSION.SDK_INT >= 19) && (command == COMMAND_CHANGE_WINDOW_STYLE)) {
             // Ensure we don't return until the resize has actually happened,
@@ -733,29 +1182,27 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
 
             boolean bShouldWait = false;
             
-            if (data instanceof Integer) {
-                // Let's figure out if we're already laid out fullscreen or not.
-                Display display = ((WindowManager)getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-                android.util.DisplayMetrics realMetrics = new android.util.DisplayMetrics();
-                display.getRealMetrics( realMetrics );
-        
-                boolean bFullscreenLayout = ((realMetrics.widthPixels == mSurface.getWidth()) && 
-                                             (realMetrics.heightPixels == mSurface.getHeight()));
-
-                if (((Integer)data).intValue() == 1) {
-                    // If we aren't laid out fullscreen or actively in fullscreen mode already, we're going
-                    // to change size and should wait for surfaceChanged() before we return, so the size
-                    // is right back in native code.  If we're already laid out fullscreen, though, we're
-                    // not going to change size even if we change decor modes, so we shouldn't wait for
-                    // surfaceChanged() -- which may not even happen -- and should return immediately.
-                    bShouldWait = !bFullscreenLayout;
-                }
-                else {
-                    // If we're laid out fullscreen (even if the status bar and nav bar are present),
-                    // or are actively in fullscreen, we're going to change size and should wait for
-                    // surfaceChanged before we return, so the size is right back in native code.
-                    bShouldWait = bFullscreenLayout;
-                }
+            // Let's figure out if we're already laid out fullscreen or not.
+            Display display = ((WindowManager)getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+            android.util.DisplayMetrics realMetrics = new android.util.DisplayMetrics();
+            display.getRealMetrics( realMetrics );
+    
+            boolean bFullscreenLayout = ((realMetrics.widthPixels == mSurface.getWidth()) && 
+                                         (realMetrics.heightPixels == mSurface.getHeight()));
+
+            if (param == 1) {
+                // If we aren't laid out fullscreen or actively in fullscreen mode already, we're going
+                // to change size and should wait for surfaceChanged() before we return, so the size
+                // is right back in native code.  If we're already laid out fullscreen, though, we're
+                // not going to change size even if we change decor modes, so we shouldn't wait for
+                // surfaceChanged() -- which may not even happen -- and should return immediately.
+                bShouldWait = !bFullscreenLayout;
+            }
+            else {
+                // If we're laid out fullscreen (even if the status bar and nav bar are present),
+                // or are actively in fullscreen, we're going to change size and should wait for
+                // surfaceChanged before we return, so the size is right back in native code.
+                bShouldWait = bFullscreenLayout;
             }
 
             if (bShouldWait) {
@@ -802,6 +1249,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
     public static native void onNativeClipboardChanged();
     public static native void onNativeSurfaceChanged();
     public static native void onNativeSurfaceDestroyed();
+    public static native void nativeThermalChanged(int status, float headroom);
     public static native String nativeGetHint(String name);
     public static native void nativeSetenv(String name, String value);
     public static native void onNativeOrientationChanged(int orientation);
@@ -811,7 +1259,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
      */
     public static boolean setActivityTitle(String title) {
         // Called from SDLMain() thread and can't directly affect the view
-        return mSingleton.sendCommand(COMMAND_CHANGE_TITLE, title);
+        return mSingleton.sendCommand(COMMAND_CHANGE_TITLE, 0, title);
     }
 
     /**
@@ -819,7 +1267,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
      */
     public static void setWindowStyle(boolean fullscreen) {
         // Called from SDLMain() thread and can't directly affect the view
-        mSingleton.sendCommand(COMMAND_CHANGE_WINDOW_STYLE, fullscreen ? 1 : 0);
+        mSingleton.sendCommand(COMMAND_CHANGE_WINDOW_STYLE, fullscreen ? 1 : 0, null);
     }
 
     /**
@@ -935,7 +1383,7 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         if (mSingleton == null) {
             return false;
         }
-        return mSingleton.sendCommand(command, Integer.valueOf(param));
+        return mSingleton.sendCommand(command, param, null);
     }
 
     /**
@@ -1133,21 +1581,340 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
         return Arrays.copyOf(filtered, used);
     }
 
-    // APK expansion files support
+    // Display modes and refresh rate
+
+    /** Frame rate policies for setFrameRatePolicy(). */
+    public static final int FRAME_RATE_POLICY_STATIC = 0;
+    public static final int FRAME_RATE_POLICY_GAMEPLAY = 1;
+
+    // Surface.setFrameRate(float, int), from API 30, looked up once
+    private static Method mSetFrameRateMethod;
+    private static boolean mSetFrameRateResolved;
+
+    // The rate asked of the surface, applied again whenever the surface is recreated
+    protected static float mSurfaceFrameRate;
 
-    /** com.android.vending.expansion.zipfile.ZipResourceFile object or null. */
-    private static Object expansionFile;
+    // Fraction of the view size the surface renders at, and the controller that picks it
+    protected static float mRenderScale;
+    protected static SDLRenderScaleController mRenderScaleController;
 
-    /** com.android.vending.expansion.zipfile.ZipResourceFile's getInputStream() or null. */
-    private static Method expansionFileMethod;
+    // Follows the thermal state while the native side is resumed
+    protected static SDLThermalMonitor mThermalMonitor;
 
     /**
-     * This method is called by SDL using JNI.
-     * @return an InputStream on success or null if no expansion file was used.
-     * @throws IOException on errors. Message is set for the SDL error message.
+     * This method returns the refresh rate to ask for on static screens such as menus.
+     * It can be overridden by derived classes.
      */
-    public static InputStream openAPKExpansionInputStream(String fileName) throws IOException {
-        // Get a ZipResourceFile representing a merger of both the main and patch files
+    protected float getStaticFrameRate() {
+        return 60.0f;
+    }
+
+    private static Display getDefaultDisplay() {
+        if (mSingleton == null) {
+            return null;
+        }
+        return mSingleton.getWindowManager().getDefaultDisplay();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the supported display modes as {id, width, height, refresh rate in millihertz}
+     *         for each mode, one after the other, or an empty array if unknown.
+     */
+    public static int[] getDisplayModes() {
+        Display display = getDefaultDisplay();
+        if (display == null) {
+            return new int[0];
+        }
+        if (Build.VERSION.SDK_INT < 23) {
+            DisplayMetrics metrics = new DisplayMetrics();
+            display.getRealMetrics(metrics);
+            return new int[] { 0, metrics.widthPixels, metrics.heightPixels, Math.round(display.getRefreshRate() * 1000) };
+        }
+
+        Display.Mode[] modes = display.getSupportedModes();
+        int[] result = new int[modes.length * 4];
+        for (int i = 0; i < modes.length; i++) {
+            result[i * 4] = modes[i].getModeId();
+            result[i * 4 + 1] = modes[i].getPhysicalWidth();
+            result[i * 4 + 2] = modes[i].getPhysicalHeight();
+            result[i * 4 + 3] = Math.round(modes[i].getRefreshRate() * 1000);
+        }
+        return result;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the id of the current display mode, or 0 if unknown.
+     */
+    public static int getDisplayMode() {
+        Display display = getDefaultDisplay();
+        if (display == null || Build.VERSION.SDK_INT < 23) {
+            return 0;
+        }
+        return display.getMode().getModeId();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Asks the system for a display mode from getDisplayModes().  The system may still pick
+     * another one, e.g. in power saving mode.
+     * @return false if the mode isn't supported.
+     */
+    public static boolean setDisplayMode(int modeId) {
+        Display display = getDefaultDisplay();
+        if (display == null || Build.VERSION.SDK_INT < 23) {
+            return false;
+        }
+        for (Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getModeId() == modeId) {
+                return mSingleton.sendCommand(COMMAND_SET_DISPLAY_MODE, modeId, null);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method is called from native code using JNI, when the game moves between its
+     * menus and a running level.
+     * Picks the refresh rate for what is on screen: the static rate for menus and other
+     * screens that barely move, to save battery, and the highest rate for gameplay.
+     * Only modes with the current resolution are considered.
+     * @param policy one of the FRAME_RATE_POLICY_* values.
+     * @return the refresh rate asked for, or 0 if it couldn't be changed.
+     */
+    public static float setFrameRatePolicy(int policy) {
+        Display display = getDefaultDisplay();
+        if (display == null || Build.VERSION.SDK_INT < 23) {
+            return 0;
+        }
+
+        Display.Mode current = display.getMode();
+        float target = policy == FRAME_RATE_POLICY_STATIC ? mSingleton.getStaticFrameRate() : Float.MAX_VALUE;
+        Display.Mode best = null;
+        for (Display.Mode mode : display.getSupportedModes()) {
+            if (mode.getPhysicalWidth() != current.getPhysicalWidth() ||
+                mode.getPhysicalHeight() != current.getPhysicalHeight()) {
+                continue;
+            }
+            // The lowest rate at or above the target, or failing that the highest rate below it
+            if (best == null) {
+                best = mode;
+            } else if (best.getRefreshRate() < target) {
+                if (mode.getRefreshRate() > best.getRefreshRate()) {
+                    best = mode;
+                }
+            } else if (mode.getRefreshRate() >= target && mode.getRefreshRate() < best.getRefreshRate()) {
+                best = mode;
+            }
+        }
+        if (best == null) {
+            return 0;
+        }
+
+        Log.v(TAG, "Frame rate policy " + policy + ": " + best.getRefreshRate() + " Hz");
+        if (Build.VERSION.SDK_INT >= 30) {
+            // Lets the system switch seamlessly where it can, rather than forcing a mode
+            mSurfaceFrameRate = best.getRefreshRate();
+            mSingleton.sendCommand(COMMAND_SET_FRAME_RATE, Float.floatToIntBits(mSurfaceFrameRate), null);
+        } else {
+            mSingleton.sendCommand(COMMAND_SET_DISPLAY_MODE, best.getModeId(), null);
+        }
+        return best.getRefreshRate();
+    }
+
+    // Calls Surface.setFrameRate, which is above the compile SDK
+    static void setSurfaceFrameRate(Surface surface, float rate) {
+        if (!mSetFrameRateResolved) {
+            mSetFrameRateResolved = true;
+            try {
+                mSetFrameRateMethod = Surface.class.getMethod("setFrameRate", float.class, int.class);
+            } catch (NoSuchMethodException ex) {
+                Log.v(TAG, "Surface.setFrameRate is not available");
+            }
+        }
+        if (mSetFrameRateMethod == null || surface == null || !surface.isValid()) {
+            return;
+        }
+        try {
+            mSetFrameRateMethod.invoke(surface, rate, 0); // FRAME_RATE_COMPATIBILITY_DEFAULT
+        } catch (Exception ex) {
+            Log.w(TAG, "Could not set the surface frame rate: " + ex);
+        }
+    }
+
+    // Render scale
+
+    /** The lowest render scale accepted, below which text becomes unreadable. */
+    public static final float MIN_RENDER_SCALE = 0.25f;
+
+    /**
+     * Native code may call this over JNI.
+     * Renders at a fraction of the view size, with the compositor scaling the result up to
+     * fill the view.  The surface is resized, so native code gets a new window size through
+     * onNativeResize, while touch coordinates stay normalized to the view.
+     * @param scale from MIN_RENDER_SCALE to 1, where 1 renders at the full view size.
+     */
+    public static void setRenderScale(float scale) {
+        scale = Math.max(MIN_RENDER_SCALE, Math.min(1.0f, scale));
+        if (scale == mRenderScale || mSingleton == null) {
+            return;
+        }
+        mRenderScale = scale;
+        mSingleton.sendCommand(COMMAND_SET_RENDER_SCALE, 0, null);
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return the current render scale, 1 when rendering at the full view size.
+     */
+    public static float getRenderScale() {
+        return mRenderScale;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Lets the render scale follow the frame times given to reportFrame(): lower when
+     * frames go over the budget, higher again when there is time to spare.
+     * @param targetFrameMs the frame time budget, or 0 to stop adjusting the scale.
+     * @param minScale the lowest scale to go down to.
+     */
+    public static synchronized void setRenderScaleTarget(float targetFrameMs, float minScale) {
+        if (targetFrameMs <= 0) {
+            mRenderScaleController = null;
+        } else {
+            minScale = Math.max(MIN_RENDER_SCALE, Math.min(1.0f, minScale));
+            mRenderScaleController = new SDLRenderScaleController(targetFrameMs, minScale, mRenderScale);
+        }
+    }
+
+    // Called by reportFrame(), does nothing unless setRenderScaleTarget() has set a budget
+    private static synchronized void updateRenderScale(float frameMs) {
+        if (mRenderScaleController == null) {
+            return;
+        }
+        float scale = mRenderScaleController.addFrame(frameMs);
+        if (scale > 0) {
+            Log.v(TAG, "Render scale " + scale + " for " + frameMs + " ms frames");
+            setRenderScale(scale);
+        }
+    }
+
+    // Thread scheduling
+
+    /**
+     * Native code may call this over JNI, from a thread native code created.
+     * Sets the priority of the calling thread for its role.
+     * @param role one of the SDLThreads.ROLE_* values.
+     * @return false if the priority couldn't be set.
+     */
+    public static boolean registerThread(int role) {
+        return SDLThreads.registerCurrentThread(role);
+    }
+
+    /**
+     * Native code may call this over JNI, before a registered native thread exits.
+     */
+    public static void unregisterThread() {
+        SDLThreads.unregisterCurrentThread();
+    }
+
+    /**
+     * This method is called from native code using JNI, at startup and when the game caps
+     * its frame rate to cool down.
+     * Sets the frame interval the game aims for when it caps its frame rate, e.g. 16666666
+     * for 60 fps.  The render threads aim for this or the vsync period, whichever is longer,
+     * and follow the refresh rate as it changes.
+     * @param nanos the frame interval, or 0 to follow the refresh rate.
+     */
+    public static void setTargetFrameDuration(long nanos) {
+        mAppFrameDuration = Math.max(0, nanos);
+        SDLThreads.setTargetFrameDuration(getTargetFrameInterval());
+    }
+
+    // Thermal state
+
+    /**
+     * This method returns whether to hold the device at a sustainable performance level
+     * from the start, trading peak speed for no throttling over long sessions.
+     * It can be overridden by derived classes.
+     */
+    protected boolean useSustainedPerformanceMode() {
+        return false;
+    }
+
+    // Creates the thermal monitor the first time it is needed, from either thread
+    private static synchronized SDLThermalMonitor getThermalMonitor() {
+        if (mThermalMonitor == null && SDL.getContext() != null) {
+            mThermalMonitor = new SDLThermalMonitor(SDL.getContext());
+            if (mSingleton != null && mSingleton.useSustainedPerformanceMode()) {
+                setSustainedPerformanceMode(true);
+            }
+        }
+        return mThermalMonitor;
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return one of the SDLThermalMonitor.THERMAL_STATUS_* values, from THERMAL_STATUS_NONE
+     *         up to THERMAL_STATUS_SHUTDOWN, or THERMAL_STATUS_UNKNOWN before API 29.
+     */
+    public static int getThermalStatus() {
+        SDLThermalMonitor monitor = getThermalMonitor();
+        return monitor == null ? SDLThermalMonitor.THERMAL_STATUS_UNKNOWN : monitor.getStatus();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * The headroom forecasts how close the device is to severe throttling, where 1.0 is the
+     * point it starts.  Scaling back particles or the frame rate as it nears 1.0 heads off
+     * the throttling.
+     * @return the thermal headroom, or NaN before API 30 or if unknown.
+     */
+    public static float getThermalHeadroom() {
+        SDLThermalMonitor monitor = getThermalMonitor();
+        return monitor == null ? Float.NaN : monitor.getHeadroom();
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * @return false if the device doesn't support sustained performance mode.
+     */
+    public static boolean setSustainedPerformanceMode(boolean enabled) {
+        SDLThermalMonitor monitor = getThermalMonitor();
+        if (mSingleton == null || monitor == null || !monitor.isSustainedPerformanceModeSupported()) {
+            return false;
+        }
+        Log.v(TAG, "Sustained performance mode " + (enabled ? "on" : "off"));
+        return mSingleton.sendCommand(COMMAND_SET_SUSTAINED_PERFORMANCE, enabled ? 1 : 0, null);
+    }
+
+    // Sensors
+
+    /**
+     * This method is called from native code using JNI, when a scene starts.
+     * Scenes without tilt controls can turn the accelerometer off, and scenes that only
+     * read it now and then can let it batch samples so the CPU sleeps in between.
+     * @param periodUs the sampling period in microseconds, e.g. 20000 for tilt controls,
+     *                 or 0 to turn the accelerometer off.
+     * @param latencyUs how long the sensor hub may hold samples, in microseconds, e.g.
+     *                  0 for tilt controls or 200000 for a menu that only reads the tilt.
+     */
+    public static void setSensorRate(int periodUs, int latencyUs) {
+        SDLSensorManager sensors = SDLSurface.mSensors;
+        if (sensors != null) {
+            sensors.setRate(periodUs, latencyUs);
+        }
+    }
+
+    // APK expansion files support
+
+    /** Index of the main and patch expansion files, or null if not opened yet. */
+    private static SDLExpansionFile expansionFile;
+
+    // Opens the expansion files named by the hints, or returns null if no expansion file is used
+    private static SDLExpansionFile getExpansionFile() throws IOException {
+        // Index both the main and patch files, with patch entries replacing main ones
         if (expansionFile == null) {
             String mainHint = nativeGetHint("SDL_ANDROID_APK_EXPANSION_MAIN_FILE_VERSION");
             if (mainHint == null) {
@@ -1158,51 +1925,91 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
                 return null; // no expansion use if no patch version was set
             }
 
-            Integer mainVersion;
-            Integer patchVersion;
+            int mainVersion;
+            int patchVersion;
             try {
-                mainVersion = Integer.valueOf(mainHint);
-                patchVersion = Integer.valueOf(patchHint);
+                mainVersion = Integer.parseInt(mainHint);
+                patchVersion = Integer.parseInt(patchHint);
             } catch (NumberFormatException ex) {
                 ex.printStackTrace();
                 throw new IOException("No valid file versions set for APK expansion files", ex);
             }
 
             try {
-                // To avoid direct dependency on Google APK expansion library that is
-                // not a part of Android SDK we access it using reflection
-                expansionFile = Class.forName("com.android.vending.expansion.zipfile.APKExpansionSupport")
-                    .getMethod("getAPKExpansionZipFile", Context.class, int.class, int.class)
-                    .invoke(null, SDL.getContext(), mainVersion, patchVersion);
-
-                expansionFileMethod = expansionFile.getClass()
-                    .getMethod("getInputStream", String.class);
-            } catch (Exception ex) {
+                expansionFile = new SDLExpansionFile(SDL.getContext(), mainVersion, patchVersion);
+            } catch (IOException ex) {
                 ex.printStackTrace();
-                expansionFile = null;
-                expansionFileMethod = null;
-                throw new IOException("Could not access APK expansion support library", ex);
+                throw new IOException("Could not read APK expansion files", ex);
             }
         }
+        return expansionFile;
+    }
 
-        // Get an input stream for a known file inside the expansion file ZIPs
-        InputStream fileStream;
-        try {
-            fileStream = (InputStream)expansionFileMethod.invoke(expansionFile, fileName);
-        } catch (Exception ex) {
-            // calling "getInputStream" failed
-            ex.printStackTrace();
-            throw new IOException("Could not open stream from APK expansion file", ex);
+    /**
+     * This method is called by SDL using JNI.
+     * @return an InputStream on success or null if no expansion file was used.
+     * @throws IOException on errors. Message is set for the SDL error message.
+     */
+    public static InputStream openAPKExpansionInputStream(String fileName) throws IOException {
+        SDLExpansionFile file = getExpansionFile();
+        if (file == null) {
+            return null;
         }
 
+        // Get an input stream for a known file inside the expansion file ZIPs
+        InputStream fileStream = file.getInputStream(fileName);
         if (fileStream == null) {
-            // calling "getInputStream" was successful but null was returned
             throw new IOException("Could not find path in APK expansion file");
         }
 
         return fileStream;
     }
 
+    /**
+     * Native code may call this over JNI.
+     * Opens a file stored uncompressed in the expansion files, so native code can mmap it.
+     * The caller owns the descriptor and must close it.
+     * @return {fd, offset, length}, or null if no expansion file was used or the file is
+     *         compressed and has to be read with openAPKExpansionInputStream instead.
+     * @throws IOException on errors. Message is set for the SDL error message.
+     */
+    public static long[] openAPKExpansionFileDescriptor(String fileName) throws IOException {
+        SDLExpansionFile file = getExpansionFile();
+        if (file == null) {
+            return null;
+        }
+        if (!file.contains(fileName)) {
+            throw new IOException("Could not find path in APK expansion file");
+        }
+        return file.openFileDescriptor(fileName);
+    }
+
+    /**
+     * Native code may call this over JNI.
+     * Opens an asset that is stored uncompressed in the APK, so native code can mmap it
+     * instead of streaming it.  The caller owns the descriptor and must close it.
+     * @return {fd, offset, length} of the asset inside the APK, or null if the asset is
+     *         compressed or missing and has to go through the stream path instead.
+     */
+    public static long[] openAssetFileDescriptor(String fileName) {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = getContext().getAssets().openFd(fileName);
+        } catch (IOException ex) {
+            return null;
+        }
+
+        long offset = descriptor.getStartOffset();
+        long length = descriptor.getLength();
+        int fd = descriptor.getParcelFileDescriptor().detachFd();
+        try {
+            descriptor.close();
+        } catch (IOException ex) {
+            // The descriptor is detached, so there is nothing left to close
+        }
+        return new long[] { fd, offset, length };
+    }
+
     // Messagebox
 
     /** Result of current messagebox. Also used for blocking the calling thread. */
@@ -1551,15 +2358,21 @@ public class SDLActivity extends Activity implements View.OnSystemUiVisibilityCh
 class SDLMain implements Runnable {
     @Override
     public void run() {
+        SDLStartupTrace.begin(SDLStartupTrace.PHASE_SDL_THREAD_START);
+        SDLThreads.registerCurrentThread(SDLThreads.ROLE_RENDER);
+
         // Runs SDL_main()
         String library = SDLActivity.mSingleton.getMainSharedObject();
         String function = SDLActivity.mSingleton.getMainFunction();
         String[] arguments = SDLActivity.mSingleton.getArguments();
 
         Log.v("SDL", "Running main function " + function + " from library " + library);
+        SDLStartupTrace.end(SDLStartupTrace.PHASE_SDL_THREAD_START);
+        SDLStartupTrace.mark(SDLStartupTrace.PHASE_NATIVE_MAIN);
         SDLActivity.nativeRunMain(library, function, arguments);
 
         Log.v("SDL", "Finished main function");
+        SDLThreads.unregisterCurrentThread();
 
         // Native thread has finished, let's finish the Activity
         if (!SDLActivity.mExitCalledFromJava) {
@@ -1576,15 +2389,19 @@ class SDLMain implements Runnable {
     Because of this, that's where we set up the SDL thread
 */
 class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
-    View.OnKeyListener, View.OnTouchListener, SensorEventListener  {
+    View.OnKeyListener, View.OnTouchListener  {
 
     // Sensors
-    protected static SensorManager mSensorManager;
+    protected static SDLSensorManager mSensors;
     protected static Display mDisplay;
 
-    // Keep track of the surface size to normalize touch events
+    // The size of the surface buffers, to map mouse positions and check the orientation
     protected static float mWidth, mHeight;
 
+    // The size of the view, to normalize touch events, which differs from the surface size
+    // under a render scale
+    protected static float mViewWidth, mViewHeight;
+
     // Startup
     public SDLSurface(Context context) {
         super(context);
@@ -1597,7 +2414,7 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
         setOnTouchListener(this);
 
         mDisplay = ((WindowManager)context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-        mSensorManager = (SensorManager)context.getSystemService(Context.SENSOR_SERVICE);
+        mSensors = new SDLSensorManager(context);
 
         if (Build.VERSION.SDK_INT >= 12) {
             setOnGenericMotionListener(SDLActivity.getMotionListener());
@@ -1606,10 +2423,42 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
         // Some arbitrary defaults to avoid a potential division by zero
         mWidth = 1.0f;
         mHeight = 1.0f;
+        mViewWidth = 1.0f;
+        mViewHeight = 1.0f;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        mViewWidth = w;
+        mViewHeight = h;
+        if (SDLActivity.mRenderScale < 1.0f) {
+            applyRenderScale();
+        }
+    }
+
+    // Sizes the surface buffers for the render scale, the compositor scales them to the view
+    public void applyRenderScale() {
+        float scale = SDLActivity.mRenderScale;
+        if (scale >= 1.0f || getWidth() == 0 || getHeight() == 0) {
+            getHolder().setSizeFromLayout();
+        } else {
+            getHolder().setFixedSize(Math.max(1, Math.round(getWidth() * scale)),
+                                     Math.max(1, Math.round(getHeight() * scale)));
+        }
+    }
+
+    // Converts a position in the view to one on the surface, for mouse events
+    static float toSurfaceX(float x) {
+        return x * mWidth / mViewWidth;
+    }
+
+    static float toSurfaceY(float y) {
+        return y * mHeight / mViewHeight;
     }
 
     public void handlePause() {
-        enableSensor(Sensor.TYPE_ACCELEROMETER, false);
+        mSensors.pause();
     }
 
     public void handleResume() {
@@ -1618,7 +2467,7 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
         requestFocus();
         setOnKeyListener(this);
         setOnTouchListener(this);
-        enableSensor(Sensor.TYPE_ACCELEROMETER, true);
+        mSensors.resume();
     }
 
     public Surface getNativeSurface() {
@@ -1630,6 +2479,7 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
     public void surfaceCreated(SurfaceHolder holder) {
         Log.v("SDL", "surfaceCreated()");
         holder.setType(SurfaceHolder.SURFACE_TYPE_GPU);
+        SDLActivity.mSurfaceGeneration++;
     }
 
     // Called when we lose the surface
@@ -1655,6 +2505,8 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
             return;
         }
 
+        SDLStartupTrace.begin(SDLStartupTrace.PHASE_SURFACE_CHANGED);
+
         int sdlFormat = 0x15151002; // SDL_PIXELFORMAT_RGB565 by default
         switch (format) {
         case PixelFormat.A_8:
@@ -1756,16 +2608,22 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
         if (skip) {
            Log.v("SDL", "Skip .. Surface is not ready.");
            SDLActivity.mIsSurfaceReady = false;
+           SDLStartupTrace.end(SDLStartupTrace.PHASE_SURFACE_CHANGED);
            return;
         }
 
         /* Surface is ready */
         SDLActivity.mIsSurfaceReady = true;
 
+        if (SDLActivity.mSurfaceFrameRate > 0) {
+            SDLActivity.setSurfaceFrameRate(holder.getSurface(), SDLActivity.mSurfaceFrameRate);
+        }
+
         /* If the surface has been previously destroyed by onNativeSurfaceDestroyed, recreate it here */
         SDLActivity.onNativeSurfaceChanged();
 
         SDLActivity.handleNativeState();
+        SDLStartupTrace.end(SDLStartupTrace.PHASE_SURFACE_CHANGED);
     }
 
     // Key events
@@ -1854,6 +2712,10 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
             SDLGenericMotionListener_API12 motionListener = SDLActivity.getMotionListener();
             x = motionListener.getEventX(event);
             y = motionListener.getEventY(event);
+            if (!motionListener.inRelativeMode()) {
+                x = toSurfaceX(x);
+                y = toSurfaceY(y);
+            }
 
             SDLActivity.onNativeMouse(mouseButton, action, x, y, motionListener.inRelativeMode());
         } else {
@@ -1861,8 +2723,8 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
                 case MotionEvent.ACTION_MOVE:
                     for (i = 0; i < pointerCount; i++) {
                         pointerFingerId = event.getPointerId(i);
-                        x = event.getX(i) / mWidth;
-                        y = event.getY(i) / mHeight;
+                        x = event.getX(i) / mViewWidth;
+                        y = event.getY(i) / mViewHeight;
                         p = event.getPressure(i);
                         if (p > 1.0f) {
                             // may be larger than 1.0f on some devices
@@ -1885,8 +2747,8 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
                     }
 
                     pointerFingerId = event.getPointerId(i);
-                    x = event.getX(i) / mWidth;
-                    y = event.getY(i) / mHeight;
+                    x = event.getX(i) / mViewWidth;
+                    y = event.getY(i) / mViewHeight;
                     p = event.getPressure(i);
                     if (p > 1.0f) {
                         // may be larger than 1.0f on some devices
@@ -1899,8 +2761,8 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
                 case MotionEvent.ACTION_CANCEL:
                     for (i = 0; i < pointerCount; i++) {
                         pointerFingerId = event.getPointerId(i);
-                        x = event.getX(i) / mWidth;
-                        y = event.getY(i) / mHeight;
+                        x = event.getX(i) / mViewWidth;
+                        y = event.getY(i) / mViewHeight;
                         p = event.getPressure(i);
                         if (p > 1.0f) {
                             // may be larger than 1.0f on some devices
@@ -1921,64 +2783,9 @@ class SDLSurface extends SurfaceView implements SurfaceHolder.Callback,
 
     // Sensor events
     public void enableSensor(int sensortype, boolean enabled) {
-        // TODO: This uses getDefaultSensor - what if we have >1 accels?
-        if (enabled) {
-            mSensorManager.registerListener(this,
-                            mSensorManager.getDefaultSensor(sensortype),
-                            SensorManager.SENSOR_DELAY_GAME, null);
-        } else {
-            mSensorManager.unregisterListener(this,
-                            mSensorManager.getDefaultSensor(sensortype));
-        }
-    }
-
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // TODO
-    }
-
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-
-            // Since we may have an orientation set, we won't receive onConfigurationChanged events.
-            // We thus should check here.
-            int newOrientation = SDLActivity.SDL_ORIENTATION_UNKNOWN;
-    
-            float x, y;
-            switch (mDisplay.getRotation()) {
-                case Surface.ROTATION_90:
-                    x = -event.values[1];
-                    y = event.values[0];
-                    newOrientation = SDLActivity.SDL_ORIENTATION_LANDSCAPE;
-                    break;
-                case Surface.ROTATION_270:
-                    x = event.values[1];
-                    y = -event.values[0];
-                    newOrientation = SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED;
-                    break;
-                case Surface.ROTATION_180:
-                    x = -event.values[1];
-                    y = -event.values[0];
-                    newOrientation = SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED;
-                    break;
-                default:
-                    x = event.values[0];
-                    y = event.values[1];
-                    newOrientation = SDLActivity.SDL_ORIENTATION_PORTRAIT;
-                    break;
-            }
-
-            if (newOrientation != SDLActivity.mCurrentOrientation) {
-                SDLActivity.mCurrentOrientation = newOrientation;
-                SDLActivity.onNativeOrientationChanged(newOrientation);
-            }
-
-            SDLActivity.onNativeAccel(-x / SensorManager.GRAVITY_EARTH,
-                                      y / SensorManager.GRAVITY_EARTH,
-                                      event.values[2] / SensorManager.GRAVITY_EARTH);
-
-            
+        // Only the accelerometer is used, through the sensor manager
+        if (sensortype == Sensor.TYPE_ACCELEROMETER) {
+            mSensors.setEnabled(enabled);
         }
     }
 
@@ -2119,7 +2926,7 @@ class SDLInputConnection extends BaseInputConnection {
                 Context c = SDL.getContext();
                 if (c instanceof SDLActivity) {
                     SDLActivity activity = (SDLActivity)c;
-                    activity.sendCommand(SDLActivity.COMMAND_TEXTEDIT_HIDE, null);
+                    activity.sendCommand(SDLActivity.COMMAND_TEXTEDIT_HIDE, 0, null);
                     return true;
                 }
             }
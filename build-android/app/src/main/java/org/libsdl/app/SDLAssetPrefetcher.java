@@ -0,0 +1,252 @@
+package org.libsdl.app;
+
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+    Reads assets ahead of time so that the page cache is warm when native code loads them.
+
+    The assets come from a JSON manifest in the asset directory.  Every "file" entry in it
+    is read once, in manifest order, by a few low-priority background threads.  The data is
+    thrown away; only the side effect of having read it matters.  Native code can move the
+    assets of the next scene to the front of the queue with prioritize(), either by manifest
+    key or by path, and can poll the progress.
+*/
+public class SDLAssetPrefetcher {
+
+    private static final String TAG = "SDL";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    protected AssetManager mAssets;
+    protected String mManifest;
+    protected int mThreadCount;
+
+    // All files to read, in manifest order, and the manifest keys that name them
+    protected ArrayList<String> mFiles = new ArrayList<String>();
+    protected HashMap<String, ArrayList<String>> mKeys = new HashMap<String, ArrayList<String>>();
+    protected boolean mManifestLoaded;
+
+    // Files to read before continuing in manifest order
+    protected LinkedList<String> mUrgent = new LinkedList<String>();
+    protected ArrayList<String> mPendingNames = new ArrayList<String>();
+    protected HashSet<String> mClaimed = new HashSet<String>();
+    protected int mNext;
+
+    protected int mActiveThreads;
+    protected int mCompleted;
+    protected long mBytes;
+    protected long mStartTime;
+    protected volatile boolean mCancelled;
+
+    public SDLAssetPrefetcher(AssetManager assets, String manifest, int threads) {
+        mAssets = assets;
+        mManifest = manifest;
+        mThreadCount = Math.max(1, threads);
+    }
+
+    /** Starts the background threads. */
+    public synchronized void start() {
+        mStartTime = System.nanoTime();
+        startThreads();
+    }
+
+    /** Stops reading after the files currently in progress. */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Moves the named assets to the front of the queue.
+     * @param names manifest keys or asset paths.
+     */
+    public synchronized void prioritize(String[] names) {
+        if (mCancelled) {
+            return;
+        }
+
+        if (!mManifestLoaded) {
+            for (String name : names) {
+                mPendingNames.add(name);
+            }
+            return;
+        }
+
+        // Add in reverse so that the first name ends up first in line
+        for (int i = names.length - 1; i >= 0; i--) {
+            ArrayList<String> files = mKeys.get(names[i]);
+            if (files == null) {
+                files = new ArrayList<String>();
+                files.add(names[i]);
+                if (!mFiles.contains(names[i])) {
+                    mFiles.add(names[i]);
+                }
+            }
+            for (int j = files.size() - 1; j >= 0; j--) {
+                if (!mClaimed.contains(files.get(j))) {
+                    mUrgent.addFirst(files.get(j));
+                }
+            }
+        }
+        startThreads();
+    }
+
+    /** Returns the fraction of the known assets read so far, from 0 to 1. */
+    public synchronized float getProgress() {
+        if (!mManifestLoaded) {
+            return 0.0f;
+        }
+        if (mFiles.isEmpty()) {
+            return 1.0f;
+        }
+        return (float)mCompleted / mFiles.size();
+    }
+
+    private void startThreads() {
+        while (mActiveThreads < mThreadCount && hasWork()) {
+            mActiveThreads++;
+            new PrefetchThread(mActiveThreads).start();
+        }
+    }
+
+    private boolean hasWork() {
+        return !mCancelled && (!mManifestLoaded || !mUrgent.isEmpty() || mNext < mFiles.size());
+    }
+
+    // Returns null once there is nothing left, and the calling thread must then exit
+    private synchronized String nextFile() {
+        while (!mCancelled) {
+            String file;
+            if (!mUrgent.isEmpty()) {
+                file = mUrgent.removeFirst();
+            } else if (mNext < mFiles.size()) {
+                file = mFiles.get(mNext++);
+            } else {
+                break;
+            }
+            if (mClaimed.add(file)) {
+                return file;
+            }
+        }
+
+        mActiveThreads--;
+        if (mActiveThreads == 0 && !mCancelled) {
+            Log.v(TAG, "Prefetched " + mCompleted + " assets (" + (mBytes / 1024) + " KB) in " +
+                       (System.nanoTime() - mStartTime) / 1000000 + " ms");
+        }
+        return null;
+    }
+
+    private synchronized void finished(long bytes) {
+        mCompleted++;
+        mBytes += bytes;
+    }
+
+    // Only the first thread to get here parses the manifest, the others wait for it
+    private synchronized void loadManifest() {
+        if (mManifestLoaded) {
+            return;
+        }
+
+        try {
+            InputStream input = mAssets.open(mManifest, AssetManager.ACCESS_STREAMING);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = input.read(buffer)) > 0) {
+                    output.write(buffer, 0, count);
+                }
+            } finally {
+                input.close();
+            }
+            collectFiles(null, new JSONObject(output.toString("UTF-8")));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read asset manifest " + mManifest + ": " + e);
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not parse asset manifest " + mManifest + ": " + e);
+        }
+
+        mManifestLoaded = true;
+        String[] pending = mPendingNames.toArray(new String[mPendingNames.size()]);
+        mPendingNames.clear();
+        prioritize(pending);
+    }
+
+    private void collectFiles(String key, Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject)value;
+            Object file = object.opt("file");
+            if (key != null && file instanceof String) {
+                addFile(key, (String)file);
+            }
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String child = keys.next();
+                collectFiles(child, object.get(child));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray)value;
+            for (int i = 0; i < array.length(); i++) {
+                collectFiles(key, array.get(i));
+            }
+        }
+    }
+
+    private void addFile(String key, String file) {
+        ArrayList<String> files = mKeys.get(key);
+        if (files == null) {
+            files = new ArrayList<String>();
+            mKeys.put(key, files);
+        }
+        files.add(file);
+        if (!mFiles.contains(file)) {
+            mFiles.add(file);
+        }
+    }
+
+    protected class PrefetchThread extends Thread {
+        public PrefetchThread(int index) {
+            super("SDLAssetPrefetch-" + index);
+        }
+
+        @Override
+        public void run() {
+            SDLThreads.registerCurrentThread(SDLThreads.ROLE_LOADER);
+            loadManifest();
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            String file;
+            while ((file = nextFile()) != null) {
+                long bytes = 0;
+                try {
+                    InputStream input = mAssets.open(file, AssetManager.ACCESS_STREAMING);
+                    try {
+                        int count;
+                        while (!mCancelled && (count = input.read(buffer)) > 0) {
+                            bytes += count;
+                        }
+                    } finally {
+                        input.close();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Could not prefetch asset " + file + ": " + e);
+                }
+                finished(bytes);
+            }
+        }
+    }
+}
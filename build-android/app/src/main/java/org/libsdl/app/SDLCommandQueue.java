@@ -0,0 +1,134 @@
+package org.libsdl.app;
+
+import android.os.Handler;
+import android.util.Log;
+
+/**
+    A fixed-size queue of commands from the SDL thread to the UI thread.
+
+    Commands are (command, int parameter) records in preallocated arrays, with an object slot
+    only for the few that carry one, such as the title.  Posting allocates nothing and the UI
+    thread drains everything queued in a single Handler callback, however many commands came
+    in since the last one.  Commands that set a state, like the window style, remove any
+    pending command of the same kind before being queued at the end, so only the latest
+    value is applied and states are still applied in the order they were set.  When the
+    queue is full further commands are refused rather than flooding the main looper.
+*/
+public class SDLCommandQueue {
+
+    private static final String TAG = "SDL";
+
+    /** Receives the commands on the UI thread. */
+    public interface Receiver {
+        void onCommand(int command, int param, Object obj);
+    }
+
+    protected final int mCapacity;
+    protected final int[] mCommands;
+    protected final int[] mParams;
+    protected final Object[] mObjects;
+    protected int mHead;
+    protected int mCount;
+
+    // The commands being handled, copied out so the queue isn't locked while they run
+    protected final int[] mDrainCommands;
+    protected final int[] mDrainParams;
+    protected final Object[] mDrainObjects;
+
+    protected final Handler mHandler;
+    protected final Receiver mReceiver;
+    protected boolean mDrainPosted;
+    protected boolean mOverflowLogged;
+
+    protected final Runnable mDrain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public SDLCommandQueue(Handler handler, Receiver receiver, int capacity) {
+        mHandler = handler;
+        mReceiver = receiver;
+        mCapacity = capacity;
+        mCommands = new int[capacity];
+        mParams = new int[capacity];
+        mObjects = new Object[capacity];
+        mDrainCommands = new int[capacity];
+        mDrainParams = new int[capacity];
+        mDrainObjects = new Object[capacity];
+    }
+
+    /**
+     * Queues a command for the UI thread.
+     * @param replace whether the command removes a pending one of the same kind.
+     * @return false if the queue is full.
+     */
+    public synchronized boolean post(int command, int param, Object obj, boolean replace) {
+        if (replace) {
+            for (int i = 0; i < mCount; i++) {
+                int index = (mHead + i) % mCapacity;
+                if (mCommands[index] == command) {
+                    remove(i);
+                    break;
+                }
+            }
+        }
+
+        if (mCount == mCapacity) {
+            if (!mOverflowLogged) {
+                Log.w(TAG, "Command queue full, dropping command " + command);
+                mOverflowLogged = true;
+            }
+            return false;
+        }
+
+        int index = (mHead + mCount) % mCapacity;
+        mCommands[index] = command;
+        mParams[index] = param;
+        mObjects[index] = obj;
+        mCount++;
+
+        if (!mDrainPosted) {
+            mDrainPosted = mHandler.post(mDrain);
+        }
+        return true;
+    }
+
+    // Removes the i-th pending command, moving the ones after it up
+    protected void remove(int i) {
+        for (; i < mCount - 1; i++) {
+            int index = (mHead + i) % mCapacity;
+            int next = (index + 1) % mCapacity;
+            mCommands[index] = mCommands[next];
+            mParams[index] = mParams[next];
+            mObjects[index] = mObjects[next];
+        }
+        mObjects[(mHead + mCount - 1) % mCapacity] = null;
+        mCount--;
+    }
+
+    // Handles every queued command, on the UI thread
+    protected void drain() {
+        int count;
+        synchronized (this) {
+            count = mCount;
+            for (int i = 0; i < count; i++) {
+                int index = (mHead + i) % mCapacity;
+                mDrainCommands[i] = mCommands[index];
+                mDrainParams[i] = mParams[index];
+                mDrainObjects[i] = mObjects[index];
+                mObjects[index] = null;
+            }
+            mHead = (mHead + count) % mCapacity;
+            mCount = 0;
+            mDrainPosted = false;
+            mOverflowLogged = false;
+        }
+
+        for (int i = 0; i < count; i++) {
+            mReceiver.onCommand(mDrainCommands[i], mDrainParams[i], mDrainObjects[i]);
+            mDrainObjects[i] = null;
+        }
+    }
+}
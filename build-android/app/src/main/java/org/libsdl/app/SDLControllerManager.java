@@ -587,8 +587,8 @@ class SDLGenericMotionListener_API12 implements View.OnGenericMotionListener {
                         return true;
 
                     case MotionEvent.ACTION_HOVER_MOVE:
-                        x = event.getX(0);
-                        y = event.getY(0);
+                        x = SDLSurface.toSurfaceX(event.getX(0));
+                        y = SDLSurface.toSurfaceY(event.getY(0));
 
                         SDLActivity.onNativeMouse(0, action, x, y, false);
                         return true;
@@ -667,8 +667,8 @@ class SDLGenericMotionListener_API24 extends SDLGenericMotionListener_API12 {
                             y = event.getAxisValue(MotionEvent.AXIS_RELATIVE_Y);
                         }
                         else {
-                            x = event.getX(0);
-                            y = event.getY(0);
+                            x = SDLSurface.toSurfaceX(event.getX(0));
+                            y = SDLSurface.toSurfaceY(event.getY(0));
                         }
 
                         SDLActivity.onNativeMouse(0, action, x, y, mRelativeModeEnabled);
@@ -755,8 +755,8 @@ class SDLGenericMotionListener_API26 extends SDLGenericMotionListener_API24 {
                         return true;
 
                     case MotionEvent.ACTION_HOVER_MOVE:
-                        x = event.getX(0);
-                        y = event.getY(0);
+                        x = SDLSurface.toSurfaceX(event.getX(0));
+                        y = SDLSurface.toSurfaceY(event.getY(0));
                         SDLActivity.onNativeMouse(0, action, x, y, false);
                         return true;
 
@@ -0,0 +1,379 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+    Reader for the APK expansion (OBB) files.
+
+    The central directories of the main and patch files are parsed once into an index,
+    with entries in the patch file replacing those in the main file.  Stored entries can
+    be handed out as (fd, offset, length) so native code can mmap them.  Compressed entries
+    are inflated through streams that share a pool of buffers and inflaters.  All reads
+    are positional, so any number of streams can be open at once.
+*/
+public class SDLExpansionFile {
+
+    private static final String TAG = "SDL";
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED = 4;
+
+    protected static class Entry {
+        File mFile;
+        FileChannel mChannel;
+        int mMethod;
+        long mHeaderOffset;
+        long mCompressedSize;
+        long mSize;
+
+        // Found by reading the local header the first time the entry is opened
+        volatile long mDataOffset = -1;
+    }
+
+    protected HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+    protected RandomAccessFile[] mFiles;
+
+    private static final ArrayDeque<byte[]> mBufferPool = new ArrayDeque<byte[]>();
+    private static final ArrayDeque<Inflater> mInflaterPool = new ArrayDeque<Inflater>();
+
+    /**
+     * Opens the main and patch expansion files for the given versions.
+     * A version of zero or less, or a file that doesn't exist, is skipped.
+     */
+    public SDLExpansionFile(Context context, int mainVersion, int patchVersion) throws IOException {
+        File dir = context.getObbDir();
+        String packageName = context.getPackageName();
+
+        File[] candidates = {
+            (mainVersion > 0) ? new File(dir, "main." + mainVersion + "." + packageName + ".obb") : null,
+            (patchVersion > 0) ? new File(dir, "patch." + patchVersion + "." + packageName + ".obb") : null
+        };
+
+        mFiles = new RandomAccessFile[candidates.length];
+        try {
+            for (int i = 0; i < candidates.length; i++) {
+                if (candidates[i] != null && candidates[i].exists()) {
+                    mFiles[i] = new RandomAccessFile(candidates[i], "r");
+                    readCentralDirectory(candidates[i], mFiles[i].getChannel());
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        Log.v(TAG, "Indexed " + mEntries.size() + " entries in APK expansion files");
+    }
+
+    public synchronized void close() {
+        for (int i = 0; i < mFiles.length; i++) {
+            if (mFiles[i] != null) {
+                try {
+                    mFiles[i].close();
+                } catch (IOException e) {
+                    // Nothing more we can do
+                }
+                mFiles[i] = null;
+            }
+        }
+        mEntries.clear();
+    }
+
+    private void readCentralDirectory(File file, FileChannel channel) throws IOException {
+        // The end of central directory record is at the end, followed by an optional comment
+        long fileSize = channel.size();
+        int tailSize = (int)Math.min(fileSize, EOCD_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+
+        int eocd = -1;
+        for (int i = tailSize - EOCD_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("No central directory in " + file);
+        }
+
+        int count = tail.getShort(eocd + 10) & 0xFFFF;
+        long size = tail.getInt(eocd + 12) & 0xFFFFFFFFL;
+        long offset = tail.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (count == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL) {
+            throw new ZipException("ZIP64 is not supported for " + file);
+        }
+
+        ByteBuffer directory = read(channel, offset, (int)size);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Corrupt central directory in " + file);
+            }
+
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_HEADER_SIZE);
+            directory.get(name);
+
+            Entry entry = new Entry();
+            entry.mFile = file;
+            entry.mChannel = channel;
+            entry.mMethod = directory.getShort(position + 10) & 0xFFFF;
+            entry.mCompressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            entry.mSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            entry.mHeaderOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            mEntries.put(new String(name, "UTF-8"), entry);
+
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long getDataOffset(Entry entry) throws IOException {
+        long offset = entry.mDataOffset;
+        if (offset < 0) {
+            ByteBuffer header = read(entry.mChannel, entry.mHeaderOffset, LOCAL_HEADER_SIZE);
+            if (header.getInt(0) != LOCAL_SIGNATURE) {
+                throw new ZipException("Corrupt local header in " + entry.mFile);
+            }
+            int nameLength = header.getShort(26) & 0xFFFF;
+            int extraLength = header.getShort(28) & 0xFFFF;
+            offset = entry.mHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+            entry.mDataOffset = offset;
+        }
+        return offset;
+    }
+
+    /** Whether the expansion files contain the given path. */
+    public boolean contains(String path) {
+        return mEntries.containsKey(path);
+    }
+
+    /**
+     * Opens a stored (uncompressed) entry for mmap.  The caller owns the descriptor.
+     * @return {fd, offset, length}, or null if the entry is compressed.
+     * @throws FileNotFoundException if there is no such entry.
+     */
+    public long[] openFileDescriptor(String path) throws IOException {
+        Entry entry = mEntries.get(path);
+        if (entry == null) {
+            throw new FileNotFoundException(path);
+        }
+        if (entry.mMethod != METHOD_STORED) {
+            return null;
+        }
+
+        long offset = getDataOffset(entry);
+        ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(entry.mFile, ParcelFileDescriptor.MODE_READ_ONLY);
+        return new long[] { descriptor.detachFd(), offset, entry.mSize };
+    }
+
+    /**
+     * Opens a stream on an entry, inflating it if it is compressed.
+     * @return the stream, or null if there is no such entry.
+     */
+    public InputStream getInputStream(String path) throws IOException {
+        Entry entry = mEntries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mMethod != METHOD_STORED && entry.mMethod != METHOD_DEFLATED) {
+            throw new ZipException("Unsupported compression method " + entry.mMethod + " for " + path);
+        }
+        return new EntryInputStream(entry, getDataOffset(entry));
+    }
+
+    private static byte[] obtainBuffer() {
+        synchronized (mBufferPool) {
+            byte[] buffer = mBufferPool.poll();
+            return (buffer != null) ? buffer : new byte[BUFFER_SIZE];
+        }
+    }
+
+    private static Inflater obtainInflater() {
+        synchronized (mInflaterPool) {
+            Inflater inflater = mInflaterPool.poll();
+            return (inflater != null) ? inflater : new Inflater(true);
+        }
+    }
+
+    private static void recycle(byte[] buffer, Inflater inflater) {
+        synchronized (mBufferPool) {
+            if (mBufferPool.size() < MAX_POOLED) {
+                mBufferPool.push(buffer);
+            }
+        }
+        synchronized (mInflaterPool) {
+            if (mInflaterPool.size() < MAX_POOLED) {
+                inflater.reset();
+                mInflaterPool.push(inflater);
+            } else {
+                inflater.end();
+            }
+        }
+    }
+
+    protected static class EntryInputStream extends InputStream {
+        private FileChannel mChannel;
+        private long mPosition;
+        private long mRemaining;
+        private long mAvailable;
+
+        // Only used for compressed entries
+        private byte[] mBuffer;
+        private Inflater mInflater;
+        private boolean mPadded;
+
+        private final byte[] mSingle = new byte[1];
+
+        EntryInputStream(Entry entry, long offset) {
+            mChannel = entry.mChannel;
+            mPosition = offset;
+            mRemaining = entry.mCompressedSize;
+            mAvailable = entry.mSize;
+            if (entry.mMethod == METHOD_DEFLATED) {
+                mBuffer = obtainBuffer();
+                mInflater = obtainInflater();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            return (read(mSingle, 0, 1) == 1) ? (mSingle[0] & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mChannel == null) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+
+            if (mInflater == null) {
+                if (mRemaining == 0) {
+                    return -1;
+                }
+                int count = mChannel.read(ByteBuffer.wrap(b, off, (int)Math.min(len, mRemaining)), mPosition);
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                mPosition += count;
+                mRemaining -= count;
+                mAvailable -= count;
+                return count;
+            }
+
+            try {
+                while (true) {
+                    int count = mInflater.inflate(b, off, len);
+                    if (count > 0) {
+                        mAvailable -= count;
+                        return count;
+                    }
+                    if (mInflater.finished() || mInflater.needsDictionary()) {
+                        return -1;
+                    }
+                    if (mInflater.needsInput()) {
+                        fill();
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        private void fill() throws IOException {
+            if (mRemaining == 0) {
+                // Inflating without the zlib wrapper needs one extra byte at the end
+                if (mPadded) {
+                    throw new EOFException("Unexpected end of compressed entry");
+                }
+                mPadded = true;
+                mBuffer[0] = 0;
+                mInflater.setInput(mBuffer, 0, 1);
+                return;
+            }
+
+            int count = mChannel.read(ByteBuffer.wrap(mBuffer, 0, (int)Math.min(mBuffer.length, mRemaining)), mPosition);
+            if (count < 0) {
+                throw new EOFException();
+            }
+            mPosition += count;
+            mRemaining -= count;
+            mInflater.setInput(mBuffer, 0, count);
+        }
+
+        @Override
+        public int available() {
+            return (int)Math.min(Integer.MAX_VALUE, Math.max(0, mAvailable));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (mInflater == null) {
+                long count = Math.max(0, Math.min(n, mRemaining));
+                mPosition += count;
+                mRemaining -= count;
+                mAvailable -= count;
+                return count;
+            }
+            return super.skip(n);
+        }
+
+        @Override
+        public void close() {
+            if (mChannel == null) {
+                return;
+            }
+            mChannel = null;
+            if (mInflater != null) {
+                recycle(mBuffer, mInflater);
+                mBuffer = null;
+                mInflater = null;
+            }
+        }
+    }
+}
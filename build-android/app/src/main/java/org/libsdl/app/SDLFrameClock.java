@@ -0,0 +1,223 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.WindowManager;
+
+/**
+    Vsync timing from the Choreographer, for native code to pace its frames against.
+
+    While running, a frame callback on the main thread records the timestamp of every vsync
+    and keeps a running estimate of the refresh period from the intervals between them.
+    Intervals of more than one and a half periods are counted as missed vsyncs rather than
+    folded into the estimate.  Native code either copies the latest timing with getTiming()
+    or blocks in awaitFrame() until the next vsync.
+
+    Since the estimate only follows small changes, it is re-seeded when the refresh rate
+    drops: from the display's new rate when a DisplayListener reports a mode switch, and
+    from the intervals themselves when they stay steady at a longer value, as when the
+    system throttles the app's frame rate without changing the display mode.
+
+    The Choreographer presentation deadline needs API 33, so the next vsync is estimated from
+    the last timestamp and the period.
+*/
+public class SDLFrameClock implements Choreographer.FrameCallback {
+
+    /** Indices of the values copied by getTiming(). */
+    public static final int TIMING_FRAME_TIME = 0;
+    public static final int TIMING_PERIOD = 1;
+    public static final int TIMING_NEXT_FRAME_TIME = 2;
+    public static final int TIMING_FRAME_COUNT = 3;
+    public static final int TIMING_MISSED_COUNT = 4;
+    public static final int TIMING_SIZE = 5;
+
+    private static final String TAG = "SDL";
+
+    // Weight of each new interval in the period estimate
+    private static final double PERIOD_SMOOTHING = 0.1;
+
+    // Number of steady long intervals after which they are taken as the new period
+    private static final int RESEED_FRAMES = 8;
+
+    protected final Display mDisplay;
+    protected final DisplayManager mDisplayManager;
+    protected final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    protected boolean mRunning;
+    protected long mFrameTime;
+    protected long mPeriod;
+    protected long mFrameCount;
+    protected long mMissedCount;
+    protected SDLFrameStats mStats;
+
+    // The run of steady intervals longer than the period, as their count and sum
+    protected int mLongCount;
+    protected long mLongSum;
+
+    public SDLFrameClock(Context context) {
+        mDisplay = ((WindowManager)context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+        mDisplayManager = (DisplayManager)context.getSystemService(Context.DISPLAY_SERVICE);
+        seedPeriod();
+    }
+
+    // Takes the period from the display's refresh rate
+    protected synchronized void seedPeriod() {
+        float refreshRate = mDisplay.getRefreshRate();
+        mPeriod = (long)(1000000000.0 / (refreshRate > 0 ? refreshRate : 60.0f));
+        mLongCount = 0;
+        mLongSum = 0;
+    }
+
+    /** Sets where the vsync intervals are recorded, or null to stop recording them. */
+    public synchronized void setFrameStats(SDLFrameStats stats) {
+        mStats = stats;
+    }
+
+    /** Starts listening for vsync.  Must be called on the main thread. */
+    public void start() {
+        synchronized (this) {
+            if (mRunning) {
+                return;
+            }
+            mRunning = true;
+            // The interval across a pause says nothing about the period
+            mFrameTime = 0;
+        }
+        // The mode may have changed while stopped
+        seedPeriod();
+        if (mDisplayManager != null) {
+            mDisplayManager.registerDisplayListener(mDisplayListener, mHandler);
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /** Stops listening for vsync, and releases any thread waiting in awaitFrame().  Must be called on the main thread. */
+    public void stop() {
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (mDisplayManager != null) {
+            mDisplayManager.unregisterDisplayListener(mDisplayListener);
+        }
+        synchronized (this) {
+            mRunning = false;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (this) {
+            if (!mRunning) {
+                return;
+            }
+
+            if (mFrameTime != 0) {
+                long interval = frameTimeNanos - mFrameTime;
+                if (mStats != null) {
+                    mStats.addVsyncInterval(interval);
+                }
+                if (interval > mPeriod * 3 / 2) {
+                    mMissedCount += Math.max(1, Math.round((double)interval / mPeriod) - 1);
+                    addLongInterval(interval);
+                } else if (interval > 0) {
+                    mPeriod += (long)((interval - mPeriod) * PERIOD_SMOOTHING);
+                    mLongCount = 0;
+                }
+            }
+            mFrameTime = frameTimeNanos;
+            mFrameCount++;
+            notifyAll();
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // Counts a run of long intervals within an eighth of each other, which after
+    // RESEED_FRAMES frames means the vsync rate itself went down
+    private void addLongInterval(long interval) {
+        if (mLongCount > 0) {
+            long average = mLongSum / mLongCount;
+            if (Math.abs(interval - average) > average / 8) {
+                mLongCount = 0;
+                mLongSum = 0;
+            }
+        }
+        mLongCount++;
+        mLongSum += interval;
+        if (mLongCount >= RESEED_FRAMES) {
+            mPeriod = mLongSum / mLongCount;
+            mLongCount = 0;
+            mLongSum = 0;
+            Log.v(TAG, "Vsync period is now " + mPeriod + " ns");
+        }
+    }
+
+    // Re-seeds the period when the display switches modes
+    protected final DisplayManager.DisplayListener mDisplayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayAdded(int displayId) {
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+        }
+
+        @Override
+        public void onDisplayChanged(int displayId) {
+            if (displayId == mDisplay.getDisplayId()) {
+                seedPeriod();
+            }
+        }
+    };
+
+    /**
+     * Copies the latest timing into the given array, so that polling every frame allocates
+     * nothing.  Times are in System.nanoTime() nanoseconds, indexed by the TIMING_* values.
+     */
+    public synchronized void getTiming(long[] timing) {
+        if (timing.length > TIMING_FRAME_TIME) {
+            timing[TIMING_FRAME_TIME] = mFrameTime;
+        }
+        if (timing.length > TIMING_PERIOD) {
+            timing[TIMING_PERIOD] = mPeriod;
+        }
+        if (timing.length > TIMING_NEXT_FRAME_TIME) {
+            timing[TIMING_NEXT_FRAME_TIME] = mFrameTime == 0 ? 0 : mFrameTime + mPeriod;
+        }
+        if (timing.length > TIMING_FRAME_COUNT) {
+            timing[TIMING_FRAME_COUNT] = mFrameCount;
+        }
+        if (timing.length > TIMING_MISSED_COUNT) {
+            timing[TIMING_MISSED_COUNT] = mMissedCount;
+        }
+    }
+
+    /** Returns the estimated refresh period in nanoseconds. */
+    public synchronized long getPeriod() {
+        return mPeriod;
+    }
+
+    /**
+     * Blocks until a vsync after the given frame count, the clock stops or the timeout passes.
+     * @return the current frame count.
+     */
+    public synchronized long awaitFrame(long frameCount, long timeoutMs) {
+        long deadline = System.nanoTime() + timeoutMs * 1000000;
+        while (mRunning && mFrameCount <= frameCount) {
+            long remaining = (deadline - System.nanoTime()) / 1000000;
+            if (remaining <= 0) {
+                break;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return mFrameCount;
+    }
+}
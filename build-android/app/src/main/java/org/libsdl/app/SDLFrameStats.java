@@ -0,0 +1,162 @@
+package org.libsdl.app;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+    Frame timing statistics, to compare levels and devices.
+
+    Three series are kept over a rolling window of frames: the time native code spends on each
+    frame, the interval between the starts of consecutive frames, which is what the player
+    sees, and the interval between vsyncs from the Choreographer.  Percentiles are computed on
+    request from a copy of the window, into arrays allocated up front, so that an overlay can
+    poll them every frame.
+
+    A frame is janky when its interval exceeds one and a half target intervals, so at least one
+    frame the game aimed for went by without a new one, and frozen when its interval exceeds
+    700 ms.  The target interval is the vsync period, or the game's own frame interval when it
+    caps its frame rate below the refresh rate, e.g. at 60 fps on a 120 Hz panel.  These
+    counts run over the whole section started by begin(), not just the window.
+*/
+public class SDLFrameStats {
+
+    private static final String TAG = "SDL";
+
+    /** Indices of the values copied by getStats(), in milliseconds except for the counts. */
+    public static final int STAT_FRAMES = 0;
+    public static final int STAT_WORK_P50 = 1;
+    public static final int STAT_WORK_P90 = 2;
+    public static final int STAT_WORK_P99 = 3;
+    public static final int STAT_INTERVAL_P50 = 4;
+    public static final int STAT_INTERVAL_P90 = 5;
+    public static final int STAT_INTERVAL_P99 = 6;
+    public static final int STAT_VSYNC_P50 = 7;
+    public static final int STAT_VSYNC_P90 = 8;
+    public static final int STAT_VSYNC_P99 = 9;
+    public static final int STAT_JANK = 10;
+    public static final int STAT_FROZEN = 11;
+    public static final int STAT_SIZE = 12;
+
+    private static final int WINDOW = 600;
+    private static final long FROZEN_NANOS = 700000000L;
+
+    /** A rolling window of durations in nanoseconds. */
+    protected static class Series {
+        private final long[] mValues = new long[WINDOW];
+        private final long[] mSorted = new long[WINDOW];
+        private int mCount;
+        private int mNext;
+
+        void add(long value) {
+            mValues[mNext] = value;
+            mNext = (mNext + 1) % WINDOW;
+            if (mCount < WINDOW) {
+                mCount++;
+            }
+        }
+
+        void clear() {
+            mCount = 0;
+            mNext = 0;
+        }
+
+        // Writes the 50th, 90th and 99th percentiles in milliseconds, or zeros if empty
+        void percentiles(float[] out, int offset) {
+            if (mCount == 0) {
+                out[offset] = out[offset + 1] = out[offset + 2] = 0;
+                return;
+            }
+            System.arraycopy(mValues, 0, mSorted, 0, mCount);
+            Arrays.sort(mSorted, 0, mCount);
+            out[offset] = mSorted[(mCount - 1) * 50 / 100] / 1000000.0f;
+            out[offset + 1] = mSorted[(mCount - 1) * 90 / 100] / 1000000.0f;
+            out[offset + 2] = mSorted[(mCount - 1) * 99 / 100] / 1000000.0f;
+        }
+    }
+
+    protected final Series mWork = new Series();
+    protected final Series mInterval = new Series();
+    protected final Series mVsync = new Series();
+    protected final float[] mStats = new float[STAT_SIZE];
+
+    protected String mLabel;
+    protected long mLastStart;
+    protected long mFrames;
+    protected long mJank;
+    protected long mFrozen;
+
+    /** Starts a new section, e.g. a level, clearing everything recorded so far. */
+    public synchronized void begin(String label) {
+        mLabel = label;
+        mWork.clear();
+        mInterval.clear();
+        mVsync.clear();
+        mLastStart = 0;
+        mFrames = 0;
+        mJank = 0;
+        mFrozen = 0;
+    }
+
+    /**
+     * Adds a frame rendered by native code.
+     * @param start when the frame started, in System.nanoTime() nanoseconds.
+     * @param end when the frame was submitted.
+     * @param period the frame interval the game aims for, to tell janky frames.
+     */
+    public synchronized void addFrame(long start, long end, long period) {
+        mFrames++;
+        mWork.add(end - start);
+        if (mLastStart != 0 && start > mLastStart) {
+            long interval = start - mLastStart;
+            mInterval.add(interval);
+            if (interval > FROZEN_NANOS) {
+                mFrozen++;
+            } else if (period > 0 && interval > period * 3 / 2) {
+                mJank++;
+            }
+        }
+        mLastStart = start;
+    }
+
+    /** Adds the interval between two vsyncs from the Choreographer. */
+    public synchronized void addVsyncInterval(long interval) {
+        mVsync.add(interval);
+    }
+
+    /** Forgets the last frame start, so the interval across a pause doesn't count as frozen. */
+    public synchronized void pause() {
+        mLastStart = 0;
+    }
+
+    /** Copies the current statistics into the given array, indexed by the STAT_* values. */
+    public synchronized void getStats(float[] stats) {
+        mStats[STAT_FRAMES] = mFrames;
+        mWork.percentiles(mStats, STAT_WORK_P50);
+        mInterval.percentiles(mStats, STAT_INTERVAL_P50);
+        mVsync.percentiles(mStats, STAT_VSYNC_P50);
+        mStats[STAT_JANK] = mJank;
+        mStats[STAT_FROZEN] = mFrozen;
+        System.arraycopy(mStats, 0, stats, 0, Math.min(stats.length, STAT_SIZE));
+    }
+
+    /** Returns a one line summary of the section so far. */
+    public synchronized String getSummary() {
+        getStats(mStats);
+        return String.format(Locale.US,
+            "%s: %d frames, work p50/p90/p99 %.1f/%.1f/%.1f ms, interval p50/p90/p99 %.1f/%.1f/%.1f ms, " +
+            "vsync p50/p99 %.1f/%.1f ms, %d janky, %d frozen",
+            mLabel != null ? mLabel : "frames", mFrames,
+            mStats[STAT_WORK_P50], mStats[STAT_WORK_P90], mStats[STAT_WORK_P99],
+            mStats[STAT_INTERVAL_P50], mStats[STAT_INTERVAL_P90], mStats[STAT_INTERVAL_P99],
+            mStats[STAT_VSYNC_P50], mStats[STAT_VSYNC_P99], mJank, mFrozen);
+    }
+
+    /** Logs the summary of the section, e.g. at the end of a level, and returns it. */
+    public String log() {
+        String summary = getSummary();
+        Log.i(TAG, "Frame stats " + summary);
+        return summary;
+    }
+}
@@ -0,0 +1,163 @@
+package org.libsdl.app;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+    Loads the native shared libraries off the UI thread.
+
+    The first library (SDL2) is loaded first and the last one (the application entry
+    point) is loaded last.  The libraries in between are assumed to depend only on the
+    first, so they are loaded concurrently once it is in.  How much of that actually
+    overlaps is up to the platform's loader.  When everything is done, or a library
+    fails to load, the completion callback is posted to the main looper.
+*/
+public class SDLLibraryLoader {
+
+    private static final String TAG = "SDL";
+
+    protected String[] mLibraries;
+
+    // Milliseconds from start() until each library started and finished loading
+    protected long[] mStartTimes;
+    protected long[] mLoadTimes;
+    protected long mStartTime;
+    protected long mTotalTime;
+
+    protected volatile Throwable mError;
+    protected volatile boolean mFinished;
+
+    public SDLLibraryLoader(String[] libraries) {
+        mLibraries = libraries;
+        mStartTimes = new long[libraries.length];
+        mLoadTimes = new long[libraries.length];
+    }
+
+    /**
+     * Starts loading the libraries in the background.
+     * @param onComplete run on the main looper once loading has finished or failed.
+     */
+    public void start(final Runnable onComplete) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "SDLLibraryLoader-" + mCount.incrementAndGet());
+            }
+        });
+
+        mStartTime = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SDLStartupTrace.begin(SDLStartupTrace.PHASE_LIBRARY_LOAD);
+                try {
+                    loadAll(executor);
+                } catch (Throwable e) {
+                    mError = e;
+                }
+                SDLStartupTrace.end(SDLStartupTrace.PHASE_LIBRARY_LOAD);
+                mTotalTime = (System.nanoTime() - mStartTime) / 1000000;
+                mFinished = true;
+                executor.shutdown();
+
+                if (mError == null) {
+                    Log.v(TAG, "Loaded libraries in " + mTotalTime + " ms: " + getTimings());
+                }
+                handler.post(onComplete);
+            }
+        });
+    }
+
+    private void loadAll(ExecutorService executor) throws Throwable {
+        int count = mLibraries.length;
+        if (count == 0) {
+            return;
+        }
+
+        load(0);
+
+        ArrayList<Future<?>> pending = new ArrayList<Future<?>>();
+        for (int i = 1; i < count - 1; i++) {
+            final int index = i;
+            pending.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    load(index);
+                }
+            }));
+        }
+        for (Future<?> future : pending) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        if (count > 1) {
+            load(count - 1);
+        }
+    }
+
+    private void load(int index) {
+        mStartTimes[index] = (System.nanoTime() - mStartTime) / 1000000;
+        Trace.beginSection("SDL load " + mLibraries[index]);
+        try {
+            SDL.loadLibrary(mLibraries[index]);
+        } finally {
+            Trace.endSection();
+        }
+        mLoadTimes[index] = (System.nanoTime() - mStartTime) / 1000000 - mStartTimes[index];
+    }
+
+    /** Whether loading has finished, successfully or not. */
+    public boolean isFinished() {
+        return mFinished;
+    }
+
+    /** The error that stopped loading, or null if all libraries were loaded. */
+    public Throwable getError() {
+        return mError;
+    }
+
+    /** Milliseconds from start() until the last library was loaded. */
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /** Milliseconds spent loading the given library, or -1 if it isn't in the list. */
+    public long getLoadTime(String library) {
+        for (int i = 0; i < mLibraries.length; i++) {
+            if (mLibraries[i].equals(library)) {
+                return mLoadTimes[i];
+            }
+        }
+        return -1;
+    }
+
+    /** The per-library timings, as "name: start+duration ms" entries. */
+    public String getTimings() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mLibraries.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(mLibraries[i]).append(": ")
+                   .append(mStartTimes[i]).append('+').append(mLoadTimes[i]).append(" ms");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package org.libsdl.app;
+
+/**
+    Picks a render scale from the frame times native code reports.
+
+    The frame time is averaged over a window of frames.  When the average is over budget the
+    scale steps down, and when it is comfortably under budget it steps back up, more slowly,
+    so that the scale doesn't oscillate around the budget.  Every change resizes the surface
+    buffers, so after one the controller waits a while before judging again.
+*/
+public class SDLRenderScaleController {
+
+    private static final int WINDOW_FRAMES = 30;
+    private static final int COOLDOWN_FRAMES = 90;
+
+    private static final float STEP_DOWN = 0.1f;
+    private static final float STEP_UP = 0.05f;
+
+    // Over budget above this fraction of it, comfortably under below the other
+    private static final float OVER_BUDGET = 1.1f;
+    private static final float UNDER_BUDGET = 0.75f;
+
+    protected float mTargetFrameMs;
+    protected float mMinScale;
+    protected float mScale;
+
+    protected float mTotalMs;
+    protected int mFrames;
+    protected int mCooldown;
+
+    /**
+     * @param targetFrameMs the frame time budget, e.g. 16.6 for 60 fps.
+     * @param minScale the lowest scale to go down to.
+     * @param scale the current scale.
+     */
+    public SDLRenderScaleController(float targetFrameMs, float minScale, float scale) {
+        mTargetFrameMs = targetFrameMs;
+        mMinScale = minScale;
+        mScale = scale;
+    }
+
+    /**
+     * Adds the time of one frame.
+     * @return the new scale, or 0 if it stays the same.
+     */
+    public float addFrame(float frameMs) {
+        if (mCooldown > 0) {
+            mCooldown--;
+            return 0;
+        }
+
+        mTotalMs += frameMs;
+        mFrames++;
+        if (mFrames < WINDOW_FRAMES) {
+            return 0;
+        }
+
+        float average = mTotalMs / mFrames;
+        mTotalMs = 0;
+        mFrames = 0;
+
+        float scale = mScale;
+        if (average > mTargetFrameMs * OVER_BUDGET) {
+            scale = Math.max(mMinScale, mScale - STEP_DOWN);
+        } else if (average < mTargetFrameMs * UNDER_BUDGET) {
+            scale = Math.min(1.0f, mScale + STEP_UP);
+        }
+        if (scale == mScale) {
+            return 0;
+        }
+
+        mScale = scale;
+        mCooldown = COOLDOWN_FRAMES;
+        return scale;
+    }
+}
@@ -0,0 +1,207 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.display.DisplayManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Display;
+import android.view.Surface;
+import android.view.WindowManager;
+
+/**
+    The accelerometer, registered only while it is wanted and at the rate the scene needs.
+
+    Native code picks a sampling period and a maximum report latency per scene.  With a
+    latency, the sensor hub queues samples in its hardware FIFO and delivers them in batches,
+    so the CPU isn't woken for each one; a period of 0 turns the sensor off for scenes that
+    don't use tilt.  The sensor is also unregistered while the activity is paused, whatever
+    the scene asked for.
+
+    The display rotation, which every sample is mapped through, is cached and updated by a
+    DisplayListener instead of being queried per sample.  The listener also reports
+    orientation changes to native code, so they arrive whatever the sensor rate is.
+*/
+public class SDLSensorManager implements SensorEventListener, DisplayManager.DisplayListener {
+
+    private static final String TAG = "SDL";
+
+    /** The default period, as SensorManager.SENSOR_DELAY_GAME. */
+    public static final int DEFAULT_PERIOD_US = 20000;
+
+    /** The default latency.  Tilt controls want each sample as it comes. */
+    public static final int DEFAULT_LATENCY_US = 0;
+
+    protected final SensorManager mSensorManager;
+    protected final Sensor mAccelerometer;
+    protected final Display mDisplay;
+    protected final DisplayManager mDisplayManager;
+    protected final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    protected int mPeriodUs = DEFAULT_PERIOD_US;
+    protected int mLatencyUs = DEFAULT_LATENCY_US;
+    protected boolean mEnabled = true;
+    protected boolean mResumed;
+
+    // The period and latency the sensor is registered with, 0 if it isn't
+    protected int mRegisteredPeriodUs;
+    protected int mRegisteredLatencyUs;
+
+    protected volatile int mRotation;
+
+    public SDLSensorManager(Context context) {
+        mSensorManager = (SensorManager)context.getSystemService(Context.SENSOR_SERVICE);
+        mAccelerometer = mSensorManager != null ? mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) : null;
+        mDisplay = ((WindowManager)context.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
+        mDisplayManager = (DisplayManager)context.getSystemService(Context.DISPLAY_SERVICE);
+        mRotation = mDisplay.getRotation();
+
+        if (mAccelerometer != null) {
+            Log.v(TAG, "Accelerometer FIFO holds " + mAccelerometer.getFifoMaxEventCount() + " events");
+        }
+    }
+
+    /**
+     * Sets the sampling rate for the current scene.
+     * @param periodUs the sampling period in microseconds, or 0 to turn the sensor off.
+     * @param latencyUs how long samples may be batched before being delivered, in microseconds.
+     */
+    public synchronized void setRate(int periodUs, int latencyUs) {
+        mPeriodUs = Math.max(0, periodUs);
+        mLatencyUs = Math.max(0, latencyUs);
+        update();
+    }
+
+    /** Turns the accelerometer on or off, as SDL asks. */
+    public synchronized void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        update();
+    }
+
+    /** Registers the sensor, if wanted, and starts following the rotation. */
+    public synchronized void resume() {
+        if (mResumed) {
+            return;
+        }
+        mResumed = true;
+        updateRotation();
+        if (mDisplayManager != null) {
+            mDisplayManager.registerDisplayListener(this, mHandler);
+        }
+        update();
+    }
+
+    /** Unregisters the sensor and the display listener. */
+    public synchronized void pause() {
+        if (!mResumed) {
+            return;
+        }
+        mResumed = false;
+        if (mDisplayManager != null) {
+            mDisplayManager.unregisterDisplayListener(this);
+        }
+        update();
+    }
+
+    /** Returns the display rotation, as one of the Surface.ROTATION_* values. */
+    public int getRotation() {
+        return mRotation;
+    }
+
+    // Since we may have an orientation set, we won't receive onConfigurationChanged events.
+    // We thus should check the rotation here.
+    protected void updateRotation() {
+        mRotation = mDisplay.getRotation();
+
+        int newOrientation;
+        switch (mRotation) {
+            case Surface.ROTATION_90:
+                newOrientation = SDLActivity.SDL_ORIENTATION_LANDSCAPE;
+                break;
+            case Surface.ROTATION_270:
+                newOrientation = SDLActivity.SDL_ORIENTATION_LANDSCAPE_FLIPPED;
+                break;
+            case Surface.ROTATION_180:
+                newOrientation = SDLActivity.SDL_ORIENTATION_PORTRAIT_FLIPPED;
+                break;
+            default:
+                newOrientation = SDLActivity.SDL_ORIENTATION_PORTRAIT;
+                break;
+        }
+
+        if (newOrientation != SDLActivity.mCurrentOrientation) {
+            SDLActivity.mCurrentOrientation = newOrientation;
+            SDLActivity.onNativeOrientationChanged(newOrientation);
+        }
+    }
+
+    // Registers or unregisters the sensor to match the wanted state
+    protected void update() {
+        boolean wanted = mEnabled && mResumed && mPeriodUs > 0 && mAccelerometer != null;
+        if (mRegisteredPeriodUs != 0 &&
+            (!wanted || mRegisteredPeriodUs != mPeriodUs || mRegisteredLatencyUs != mLatencyUs)) {
+            mSensorManager.unregisterListener(this, mAccelerometer);
+            mRegisteredPeriodUs = 0;
+        }
+        if (wanted && mRegisteredPeriodUs == 0) {
+            if (mSensorManager.registerListener(this, mAccelerometer, mPeriodUs, mLatencyUs)) {
+                mRegisteredPeriodUs = mPeriodUs;
+                mRegisteredLatencyUs = mLatencyUs;
+            } else {
+                Log.w(TAG, "Could not register the accelerometer");
+            }
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            float x, y;
+            switch (mRotation) {
+                case Surface.ROTATION_90:
+                    x = -event.values[1];
+                    y = event.values[0];
+                    break;
+                case Surface.ROTATION_270:
+                    x = event.values[1];
+                    y = -event.values[0];
+                    break;
+                case Surface.ROTATION_180:
+                    x = -event.values[1];
+                    y = -event.values[0];
+                    break;
+                default:
+                    x = event.values[0];
+                    y = event.values[1];
+                    break;
+            }
+
+            SDLActivity.onNativeAccel(-x / SensorManager.GRAVITY_EARTH,
+                                      y / SensorManager.GRAVITY_EARTH,
+                                      event.values[2] / SensorManager.GRAVITY_EARTH);
+        }
+    }
+
+    @Override
+    public void onDisplayAdded(int displayId) {
+    }
+
+    @Override
+    public void onDisplayRemoved(int displayId) {
+    }
+
+    @Override
+    public void onDisplayChanged(int displayId) {
+        if (displayId == mDisplay.getDisplayId()) {
+            updateRotation();
+        }
+    }
+}
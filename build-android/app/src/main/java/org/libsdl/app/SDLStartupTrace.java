@@ -0,0 +1,104 @@
+package org.libsdl.app;
+
+import android.os.Trace;
+import android.util.Log;
+
+/**
+    Cold-start timing table, from SDLActivity.onCreate to the first frame.
+
+    Each phase is recorded once per launch, as the time since onCreate that it
+    started and how long it took.  Phases with a duration are also emitted as
+    android.os.Trace sections, so they line up with systrace/Perfetto captures.
+    A phase must begin and end on the same thread.  Milestones (the native main
+    entry and the first frame) are points in time with no duration.
+*/
+public class SDLStartupTrace {
+
+    private static final String TAG = "SDL";
+
+    public static final int PHASE_LIBRARY_LOAD = 0;
+    public static final int PHASE_LAYOUT = 1;
+    public static final int PHASE_SURFACE_CHANGED = 2;
+    public static final int PHASE_SDL_THREAD_START = 3;
+    public static final int PHASE_NATIVE_MAIN = 4;
+    public static final int PHASE_FIRST_FRAME = 5;
+
+    private static final String[] PHASE_NAMES = {
+        "library load",
+        "layout/surface",
+        "surfaceChanged",
+        "SDLMain start",
+        "nativeRunMain",
+        "first frame"
+    };
+
+    protected static long mOrigin;
+    protected static long[] mStartTimes = new long[PHASE_NAMES.length];
+    protected static long[] mEndTimes = new long[PHASE_NAMES.length];
+
+    /** Clears the table and starts the clock.  Called at the top of onCreate. */
+    public static synchronized void start() {
+        mOrigin = System.nanoTime();
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            mStartTimes[i] = -1;
+            mEndTimes[i] = -1;
+        }
+    }
+
+    /** Begins a phase, unless it has already been recorded for this launch. */
+    public static synchronized void begin(int phase) {
+        if (mOrigin == 0 || mStartTimes[phase] >= 0) {
+            return;
+        }
+        mStartTimes[phase] = System.nanoTime() - mOrigin;
+        Trace.beginSection("SDL " + PHASE_NAMES[phase]);
+    }
+
+    /** Ends a phase started with begin(). */
+    public static synchronized void end(int phase) {
+        if (mStartTimes[phase] < 0 || mEndTimes[phase] >= 0) {
+            return;
+        }
+        mEndTimes[phase] = System.nanoTime() - mOrigin;
+        Trace.endSection();
+    }
+
+    /** Records a milestone, unless it has already been recorded for this launch. */
+    public static synchronized void mark(int phase) {
+        if (mOrigin == 0 || mStartTimes[phase] >= 0) {
+            return;
+        }
+        mStartTimes[phase] = System.nanoTime() - mOrigin;
+        mEndTimes[phase] = mStartTimes[phase];
+    }
+
+    /** Whether the phase has been fully recorded. */
+    public static synchronized boolean isRecorded(int phase) {
+        return mEndTimes[phase] >= 0;
+    }
+
+    /**
+     * Returns the recorded phases, one per line, as "name: start+duration ms".
+     * Phases that haven't been reached yet are left out.
+     */
+    public static synchronized String getTimings() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            if (mEndTimes[i] < 0) {
+                continue;
+            }
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(PHASE_NAMES[i]).append(": ")
+                   .append(String.format("%.1f+%.1f ms", mStartTimes[i] / 1000000.0f,
+                                         (mEndTimes[i] - mStartTimes[i]) / 1000000.0f));
+        }
+        return builder.toString();
+    }
+
+    /** Logs the table. */
+    public static void log() {
+        Log.v(TAG, "Startup timings:\n" + getTimings());
+    }
+}
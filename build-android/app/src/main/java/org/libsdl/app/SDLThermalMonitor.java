@@ -0,0 +1,184 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+    Tracks the thermal state of the device, so the game can scale back before the system
+    throttles it.
+
+    The thermal status (API 29) and headroom (API 30) are above the compile SDK, so they are
+    looked up by reflection.  The status comes from a PowerManager.OnThermalStatusChangedListener,
+    implemented with a Proxy and registered while the monitor runs, so nothing is polled.  The
+    headroom has no listener and may only be queried about once a second, so it is read when
+    asked for and reused in between.  On older devices the status stays THERMAL_STATUS_UNKNOWN
+    and the headroom NaN.
+
+    Each change of status is passed on to native code, along with the headroom at the time,
+    through SDLActivity.nativeThermalChanged(), so the game can scale back without polling.
+*/
+public class SDLThermalMonitor implements InvocationHandler {
+
+    private static final String TAG = "SDL";
+
+    /** Thermal status values, as in PowerManager.THERMAL_STATUS_*. */
+    public static final int THERMAL_STATUS_UNKNOWN = -1;
+    public static final int THERMAL_STATUS_NONE = 0;
+    public static final int THERMAL_STATUS_LIGHT = 1;
+    public static final int THERMAL_STATUS_MODERATE = 2;
+    public static final int THERMAL_STATUS_SEVERE = 3;
+    public static final int THERMAL_STATUS_CRITICAL = 4;
+    public static final int THERMAL_STATUS_EMERGENCY = 5;
+    public static final int THERMAL_STATUS_SHUTDOWN = 6;
+
+    // The shortest time between two headroom queries
+    private static final long HEADROOM_INTERVAL_MS = 1000;
+
+    // How far ahead the headroom is forecast, in seconds
+    private static final int HEADROOM_FORECAST = 10;
+
+    protected PowerManager mPowerManager;
+    protected Method mGetStatusMethod;
+    protected Method mAddListenerMethod;
+    protected Method mRemoveListenerMethod;
+    protected Method mGetHeadroomMethod;
+    protected Object mListener;
+    protected boolean mRunning;
+
+    protected volatile int mStatus = THERMAL_STATUS_UNKNOWN;
+    protected float mHeadroom = Float.NaN;
+    protected long mHeadroomTime;
+
+    public SDLThermalMonitor(Context context) {
+        mPowerManager = (PowerManager)context.getSystemService(Context.POWER_SERVICE);
+        if (mPowerManager == null) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= 29) {
+            try {
+                Class<?> listener = Class.forName("android.os.PowerManager$OnThermalStatusChangedListener");
+                mGetStatusMethod = PowerManager.class.getMethod("getCurrentThermalStatus");
+                mAddListenerMethod = PowerManager.class.getMethod("addThermalStatusListener", listener);
+                mRemoveListenerMethod = PowerManager.class.getMethod("removeThermalStatusListener", listener);
+                mListener = Proxy.newProxyInstance(listener.getClassLoader(), new Class<?>[] { listener }, this);
+            } catch (Exception e) {
+                Log.v(TAG, "PowerManager thermal status listener is not available: " + e);
+                mGetStatusMethod = null;
+                mListener = null;
+            }
+        }
+        if (Build.VERSION.SDK_INT >= 30) {
+            try {
+                mGetHeadroomMethod = PowerManager.class.getMethod("getThermalHeadroom", int.class);
+            } catch (NoSuchMethodException e) {
+                Log.v(TAG, "PowerManager.getThermalHeadroom is not available");
+            }
+        }
+    }
+
+    /** Whether there is anything to monitor on this device. */
+    public boolean isSupported() {
+        return mListener != null || mGetHeadroomMethod != null;
+    }
+
+    /** Whether the device can hold a steady, lower performance level for long sessions. */
+    public boolean isSustainedPerformanceModeSupported() {
+        return Build.VERSION.SDK_INT >= 24 && mPowerManager != null &&
+               mPowerManager.isSustainedPerformanceModeSupported();
+    }
+
+    /** Reads the current status and registers the listener.  Must be called on the main thread. */
+    public void start() {
+        if (mRunning || mListener == null) {
+            return;
+        }
+        try {
+            setStatus((Integer)mGetStatusMethod.invoke(mPowerManager));
+            // Without an executor the listener is called on the main thread
+            mAddListenerMethod.invoke(mPowerManager, mListener);
+            mRunning = true;
+        } catch (Exception e) {
+            Log.w(TAG, "Could not listen to the thermal status: " + e);
+            mListener = null;
+        }
+    }
+
+    /** Unregisters the listener.  Must be called on the main thread. */
+    public void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        try {
+            mRemoveListenerMethod.invoke(mPowerManager, mListener);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not remove the thermal status listener: " + e);
+        }
+    }
+
+    // Implements OnThermalStatusChangedListener, along with the Object methods the
+    // PowerManager uses to keep track of its listeners
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("onThermalStatusChanged")) {
+            setStatus((Integer)args[0]);
+            return null;
+        } else if (name.equals("equals")) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        } else if (name.equals("toString")) {
+            return "SDLThermalMonitor listener";
+        }
+        return null;
+    }
+
+    protected void setStatus(int status) {
+        if (status != mStatus) {
+            Log.v(TAG, "Thermal status " + mStatus + " -> " + status);
+            mStatus = status;
+            if (SDLActivity.mLibrariesLoaded && !SDLActivity.mBrokenLibraries) {
+                SDLActivity.nativeThermalChanged(status, getHeadroom());
+            }
+        }
+    }
+
+    /** Returns one of the THERMAL_STATUS_* values. */
+    public int getStatus() {
+        return mStatus;
+    }
+
+    /**
+     * Returns the forecast thermal headroom, where 1.0 is the point of severe throttling,
+     * or NaN if unknown.
+     */
+    public synchronized float getHeadroom() {
+        if (mGetHeadroomMethod == null) {
+            return Float.NaN;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (mHeadroomTime != 0 && now - mHeadroomTime < HEADROOM_INTERVAL_MS) {
+            return mHeadroom;
+        }
+        mHeadroomTime = now;
+        try {
+            // NaN when called too often or unsupported, in which case keep the last value
+            float headroom = (Float)mGetHeadroomMethod.invoke(mPowerManager, HEADROOM_FORECAST);
+            if (!Float.isNaN(headroom)) {
+                mHeadroom = headroom;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read the thermal headroom: " + e);
+            mGetHeadroomMethod = null;
+        }
+        return mHeadroom;
+    }
+}
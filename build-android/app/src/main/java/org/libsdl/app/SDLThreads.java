@@ -0,0 +1,214 @@
+package org.libsdl.app;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import java.lang.reflect.Method;
+
+/**
+    Scheduling of the threads the game runs on, by role.
+
+    Each thread registers itself with the role it plays and gets the priority for that role.
+    Java threads register when they start; native threads register over JNI through
+    SDLActivity.registerThread().  Threads with the render role also share a performance
+    hint session where the platform has one (API 31), which tells the scheduler how long a
+    frame should take and how long it actually took, so it can pick cores and clocks for
+    the frame rate rather than for the average load.
+
+    Java has no CPU affinity call.  On Android, core placement follows from the priority and
+    the hint session, so those are what this sets.
+*/
+public class SDLThreads {
+
+    private static final String TAG = "SDL";
+
+    /** Thread roles, from the most to the least latency sensitive. */
+    public static final int ROLE_AUDIO = 0;
+    public static final int ROLE_RENDER = 1;
+    public static final int ROLE_INPUT = 2;
+    public static final int ROLE_WORKER = 3;
+    public static final int ROLE_LOADER = 4;
+
+    private static final int[] PRIORITIES = {
+        Process.THREAD_PRIORITY_URGENT_AUDIO,
+        Process.THREAD_PRIORITY_URGENT_DISPLAY,
+        Process.THREAD_PRIORITY_DISPLAY,
+        Process.THREAD_PRIORITY_DEFAULT,
+        Process.THREAD_PRIORITY_BACKGROUND,
+    };
+
+    private static final String[] NAMES = { "audio", "render", "input", "worker", "loader" };
+
+    // Registered threads, by tid
+    private static final SparseIntArray mRoles = new SparseIntArray();
+
+    // The PerformanceHintManager.Session for the render threads, and its methods
+    private static Object mHintSession;
+    private static Method mUpdateTargetMethod;
+    private static Method mReportActualMethod;
+    private static Method mCloseMethod;
+    private static boolean mHintResolved;
+    private static long mTargetDuration;
+
+    /**
+     * Registers the calling thread in a role and sets its priority.
+     * @param role one of the ROLE_* values.
+     * @return false if the role is unknown or the priority couldn't be set.
+     */
+    public static boolean registerCurrentThread(int role) {
+        if (role < 0 || role >= PRIORITIES.length) {
+            Log.w(TAG, "Unknown thread role " + role);
+            return false;
+        }
+
+        int tid = Process.myTid();
+        synchronized (SDLThreads.class) {
+            mRoles.put(tid, role);
+            if (role == ROLE_RENDER) {
+                // The session has a fixed set of threads, so it is rebuilt with this one
+                closeHintSession();
+            }
+        }
+
+        try {
+            Process.setThreadPriority(PRIORITIES[role]);
+        } catch (RuntimeException e) {
+            // Some devices refuse the higher priorities
+            Log.w(TAG, "Could not set " + NAMES[role] + " priority for thread " + tid + ": " + e);
+            return false;
+        }
+        Log.v(TAG, "Thread " + Thread.currentThread().getName() + " (" + tid + ") registered as " + NAMES[role]);
+        return true;
+    }
+
+    /** Forgets the calling thread, e.g. before a native thread exits. */
+    public static synchronized void unregisterCurrentThread() {
+        int tid = Process.myTid();
+        int index = mRoles.indexOfKey(tid);
+        if (index >= 0) {
+            boolean render = mRoles.valueAt(index) == ROLE_RENDER;
+            mRoles.removeAt(index);
+            if (render) {
+                closeHintSession();
+            }
+        }
+    }
+
+    /** Returns the role of the thread with the given tid, or -1 if it isn't registered. */
+    public static synchronized int getRole(int tid) {
+        return mRoles.get(tid, -1);
+    }
+
+    /**
+     * Sets the time a frame should take on the render threads.  Changes of less than
+     * 1/32 are ignored, so a target that follows the estimated vsync period doesn't
+     * update the session on every frame.
+     * @param nanos the target frame duration, e.g. 16666666 for 60 fps.
+     */
+    public static synchronized void setTargetFrameDuration(long nanos) {
+        if (nanos <= 0 || Math.abs(nanos - mTargetDuration) <= mTargetDuration / 32) {
+            return;
+        }
+        mTargetDuration = nanos;
+        if (mHintSession != null) {
+            invokeHint(mUpdateTargetMethod, nanos);
+        }
+    }
+
+    /**
+     * Reports the time the render threads actually spent on the last frame.
+     * Does nothing until setTargetFrameDuration() has been called, or before API 31.
+     */
+    public static synchronized void reportFrameDuration(long nanos) {
+        if (nanos <= 0 || mTargetDuration <= 0) {
+            return;
+        }
+        if (mHintSession == null && !createHintSession()) {
+            return;
+        }
+        invokeHint(mReportActualMethod, nanos);
+    }
+
+    // Creates a hint session for the registered render threads
+    private static boolean createHintSession() {
+        if (Build.VERSION.SDK_INT < 31 || (mHintResolved && mUpdateTargetMethod == null)) {
+            return false;
+        }
+        Context context = SDL.getContext();
+        if (context == null) {
+            return false;
+        }
+
+        int count = 0;
+        for (int i = 0; i < mRoles.size(); i++) {
+            if (mRoles.valueAt(i) == ROLE_RENDER) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        int[] tids = new int[count];
+        count = 0;
+        for (int i = 0; i < mRoles.size(); i++) {
+            if (mRoles.valueAt(i) == ROLE_RENDER) {
+                tids[count++] = mRoles.keyAt(i);
+            }
+        }
+
+        // PerformanceHintManager is above the compile SDK
+        try {
+            Object manager = context.getSystemService("performance_hint");
+            if (manager == null) {
+                mHintResolved = true;
+                return false;
+            }
+            Method create = manager.getClass().getMethod("createHintSession", int[].class, long.class);
+            mHintSession = create.invoke(manager, tids, mTargetDuration);
+            if (mHintSession == null) {
+                // Not supported on this device, so don't try again every frame
+                mHintResolved = true;
+                mUpdateTargetMethod = null;
+                return false;
+            }
+            if (!mHintResolved) {
+                Class<?> session = create.getReturnType();
+                mUpdateTargetMethod = session.getMethod("updateTargetWorkDuration", long.class);
+                mReportActualMethod = session.getMethod("reportActualWorkDuration", long.class);
+                mCloseMethod = session.getMethod("close");
+                mHintResolved = true;
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Could not create a performance hint session: " + e);
+            mHintResolved = true;
+            mHintSession = null;
+            mUpdateTargetMethod = null;
+        }
+        return mHintSession != null;
+    }
+
+    private static void closeHintSession() {
+        if (mHintSession == null) {
+            return;
+        }
+        try {
+            mCloseMethod.invoke(mHintSession);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not close the performance hint session: " + e);
+        }
+        mHintSession = null;
+    }
+
+    private static void invokeHint(Method method, long nanos) {
+        try {
+            method.invoke(mHintSession, nanos);
+        } catch (Exception e) {
+            Log.w(TAG, "Performance hint failed, no longer sending hints: " + e);
+            closeHintSession();
+            mUpdateTargetMethod = null;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.libsdl.app;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Round trip of the HID recording format: reports written by HIDDeviceRecorder come back
+ * out of HIDDeviceReplay unchanged and in order.
+ */
+public class HIDDeviceReplayTest {
+
+    private static final int RECORDED_ID = 3;
+    private static final int OTHER_ID = 4;
+    private static final int REPLAY_ID = 42;
+
+    private File mFile;
+    private HIDDeviceManager mManager;
+
+    /** A device description for the recorder. */
+    private static HIDDevice device(final int id, final int vendorId, final String product) {
+        HIDDevice device = mock(HIDDevice.class);
+        when(device.getId()).thenReturn(id);
+        when(device.getVendorId()).thenReturn(vendorId);
+        when(device.getProductId()).thenReturn(0x1142);
+        when(device.getVersion()).thenReturn(300);
+        when(device.getManufacturerName()).thenReturn("Valve");
+        when(device.getProductName()).thenReturn(product);
+        when(device.getSerialNumber()).thenReturn("serial-" + id);
+        return device;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("hid", ".rec");
+        mManager = mock(HIDDeviceManager.class);
+        when(mManager.getDeviceIDForIdentifier(anyString())).thenReturn(REPLAY_ID);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void replaysRecordedReportsInOrder() throws IOException {
+        HIDDevice recorded = device(RECORDED_ID, 0x28de, "Steam Controller");
+        HIDDevice other = device(OTHER_ID, 0x045e, "Other");
+
+        // Lengths across the one byte varint boundary
+        byte[] first = new byte[] { 1, 2, 3 };
+        byte[] feature = new byte[] { 9, 8 };
+        byte[] large = new byte[300];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte)i;
+        }
+
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mFile);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, recorded, RECORDED_ID, first);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, other, OTHER_ID, new byte[] { 7 });
+        recorder.record(HIDDeviceRecorder.RECORD_SEND_OUTPUT, recorded, RECORDED_ID, new byte[] { 5 });
+        recorder.record(HIDDeviceRecorder.RECORD_FEATURE, recorded, RECORDED_ID, feature);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, recorded, RECORDED_ID, large);
+        recorder.close();
+
+        HIDDeviceReplay replay = new HIDDeviceReplay(mManager, mFile, RECORDED_ID, 0.0f, false);
+        assertEquals(REPLAY_ID, replay.getId());
+        assertEquals(0x28de, replay.getVendorId());
+        assertEquals(0x1142, replay.getProductId());
+        assertEquals(300, replay.getVersion());
+        assertEquals("Valve", replay.getManufacturerName());
+        assertEquals("Steam Controller", replay.getProductName());
+        assertEquals("serial-" + RECORDED_ID, replay.getSerialNumber());
+
+        // Only the input and feature reports of the recorded device are played back
+        assertEquals(3, replay.getReportCount());
+
+        replay.mRunning = true;
+        replay.new ReplayThread().run();
+
+        // Feature reports only answer requests, see getFeatureReportAnswersInOrder
+        InOrder order = inOrder(mManager);
+        order.verify(mManager).dispatchInputReport(REPLAY_ID, first);
+        order.verify(mManager).dispatchInputReport(REPLAY_ID, large);
+        order.verifyNoMoreInteractions();
+    }
+
+    @Test
+    public void getFeatureReportAnswersInOrder() throws IOException {
+        HIDDevice recorded = device(RECORDED_ID, 0x28de, "Steam Controller");
+        HIDDevice other = device(OTHER_ID, 0x045e, "Other");
+        byte[] first = new byte[] { 9, 8 };
+        byte[] second = new byte[] { 7, 6, 5 };
+
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mFile);
+        recorder.record(HIDDeviceRecorder.RECORD_FEATURE, recorded, RECORDED_ID, first);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, recorded, RECORDED_ID, new byte[] { 1 });
+        recorder.record(HIDDeviceRecorder.RECORD_FEATURE, other, OTHER_ID, new byte[] { 4 });
+        recorder.record(HIDDeviceRecorder.RECORD_FEATURE, recorded, RECORDED_ID, second);
+        recorder.close();
+
+        HIDDeviceReplay replay = new HIDDeviceReplay(mManager, mFile, RECORDED_ID, 0.0f, false);
+        byte[] request = new byte[64];
+        assertTrue(replay.getFeatureReport(request));
+        assertTrue(replay.getFeatureReport(request));
+        // Only two were recorded for this device
+        assertFalse(replay.getFeatureReport(request));
+
+        InOrder order = inOrder(mManager);
+        order.verify(mManager).dispatchFeatureReport(REPLAY_ID, first);
+        order.verify(mManager).dispatchFeatureReport(REPLAY_ID, second);
+        verify(mManager, times(2)).dispatchFeatureReport(anyInt(), any(byte[].class));
+    }
+
+    @Test
+    public void getFeatureReportWithoutRecordingFails() throws IOException {
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mFile);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, device(RECORDED_ID, 0x28de, "Input only"), RECORDED_ID, new byte[] { 1 });
+        recorder.close();
+
+        // Looping doesn't help when there is nothing to answer with
+        HIDDeviceReplay replay = new HIDDeviceReplay(mManager, mFile, RECORDED_ID, 0.0f, true);
+        assertFalse(replay.getFeatureReport(new byte[64]));
+        verify(mManager, never()).dispatchFeatureReport(anyInt(), any(byte[].class));
+    }
+
+    @Test
+    public void replayWithoutReportsReturns() throws IOException {
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mFile);
+        recorder.record(HIDDeviceRecorder.RECORD_SEND_OUTPUT, device(RECORDED_ID, 0x28de, "Idle"), RECORDED_ID, new byte[] { 5 });
+        recorder.close();
+
+        HIDDeviceReplay replay = new HIDDeviceReplay(mManager, mFile, RECORDED_ID, 0.0f, true);
+        assertEquals(0, replay.getReportCount());
+
+        // Looping over nothing must not spin
+        replay.mRunning = true;
+        replay.new ReplayThread().run();
+        verify(mManager, never()).dispatchInputReport(anyInt(), any(byte[].class));
+    }
+
+    @Test(expected = IOException.class)
+    public void missingDeviceIsRejected() throws IOException {
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mFile);
+        recorder.record(HIDDeviceRecorder.RECORD_INPUT, device(OTHER_ID, 0x045e, "Other"), OTHER_ID, new byte[] { 1 });
+        recorder.close();
+
+        new HIDDeviceReplay(mManager, mFile, RECORDED_ID, 0.0f, false);
+    }
+}
@@ -0,0 +1,105 @@
+package org.libsdl.app;
+
+import android.media.AudioFormat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+    Measures the SDLAudioManager write loops for one buffer of each sample format.
+
+    The AudioTrack is shadowed to accept at most chunk bytes per write, so smaller
+    chunks exercise more trips around the retry loop.  Each format writes to a track
+    opened with that encoding, as AudioTrack rejects writes in any other.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AudioWriteBenchmark {
+
+    @State(Scope.Thread)
+    public static abstract class Track {
+        @Param({"1024"})
+        public int frames;
+
+        @Param({"1024", "65536"})
+        public int chunk;
+
+        private final int mEncoding;
+
+        protected Track(int encoding) {
+            mEncoding = encoding;
+        }
+
+        protected abstract void allocate(int samples);
+
+        @Setup
+        public void open() {
+            ShadowChunkedAudioTrack.sWriteChunk = chunk;
+            SDLAudioManager.initialize();
+            SDLAudioManager.audioOpen(48000, mEncoding, 2, frames);
+            allocate(frames * 2);
+        }
+
+        @TearDown
+        public void close() {
+            SDLAudioManager.audioClose();
+        }
+    }
+
+    public static class FloatTrack extends Track {
+        float[] buffer;
+
+        public FloatTrack() {
+            super(AudioFormat.ENCODING_PCM_FLOAT);
+        }
+
+        @Override
+        protected void allocate(int samples) {
+            buffer = new float[samples];
+        }
+    }
+
+    public static class ShortTrack extends Track {
+        short[] buffer;
+
+        public ShortTrack() {
+            super(AudioFormat.ENCODING_PCM_16BIT);
+        }
+
+        @Override
+        protected void allocate(int samples) {
+            buffer = new short[samples];
+        }
+    }
+
+    public static class ByteTrack extends Track {
+        byte[] buffer;
+
+        public ByteTrack() {
+            super(AudioFormat.ENCODING_PCM_8BIT);
+        }
+
+        @Override
+        protected void allocate(int samples) {
+            buffer = new byte[samples];
+        }
+    }
+
+    @Benchmark
+    public void writeFloat(FloatTrack track) {
+        SDLAudioManager.audioWriteFloatBuffer(track.buffer);
+    }
+
+    @Benchmark
+    public void writeShort(ShortTrack track) {
+        SDLAudioManager.audioWriteShortBuffer(track.buffer);
+    }
+
+    @Benchmark
+    public void writeByte(ByteTrack track) {
+        SDLAudioManager.audioWriteByteBuffer(track.buffer);
+    }
+}
@@ -0,0 +1,110 @@
+package org.libsdl.app;
+
+import android.hardware.usb.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+
+/**
+    Measures HID input report dispatch, per report.
+
+    usbInput drives the real HIDDeviceUSB input loop against a connection scripted by
+    ShadowScriptedUsbDeviceConnection.  replay plays a recording made with
+    HIDDeviceRecorder through HIDDeviceReplay, and record measures the cost of
+    recording itself.  Both loops run on the benchmark thread instead of their usual
+    background thread, and the reports end at ShadowHIDDeviceManager.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class HIDDispatchBenchmark {
+
+    static final int REPORTS = 1000;
+    static final int PACKET_SIZE = 64;
+
+    private HIDDeviceManager mManager;
+    private UsbDeviceConnection mConnection;
+    private ShadowScriptedUsbDeviceConnection mScript;
+    private HIDDeviceUSB mDevice;
+    private HIDDeviceReplay mReplay;
+    private File mRecording;
+    private File mScratch;
+    private byte[][] mReports;
+
+    @Setup
+    public void setup() throws IOException {
+        // Mostly full packets, with the occasional short one like a real controller
+        mReports = new byte[REPORTS][];
+        for (int i = 0; i < REPORTS; i++) {
+            mReports[i] = new byte[(i % 10 == 0) ? 32 : PACKET_SIZE];
+            mReports[i][0] = 0x01;
+            mReports[i][mReports[i].length - 1] = (byte)i;
+        }
+
+        UsbEndpoint in = new UsbEndpoint(UsbConstants.USB_DIR_IN | 1, UsbConstants.USB_ENDPOINT_XFER_INT, PACKET_SIZE, 1);
+        UsbEndpoint out = new UsbEndpoint(UsbConstants.USB_DIR_OUT | 2, UsbConstants.USB_ENDPOINT_XFER_INT, PACKET_SIZE, 1);
+        UsbDevice usbDevice = new UsbDevice("/dev/bus/usb/001/002", 0x045e, 0x028e, 0, 0, 0, null, null, "1.0", null);
+        mConnection = new UsbDeviceConnection(usbDevice);
+        mScript = Shadow.extract(mConnection);
+        mScript.setReports(mReports);
+        mManager = HIDDeviceManager.acquire(RuntimeEnvironment.getApplication());
+
+        mDevice = new HIDDeviceUSB(mManager, usbDevice, 0);
+        mDevice.mConnection = mConnection;
+        mDevice.mInputEndpoint = in;
+        mDevice.mOutputEndpoint = out;
+        mDevice.mInputRequest = new UsbRequest();
+        mDevice.mInputRequest.initialize(mConnection, in);
+        mDevice.mRunning = true;
+
+        mRecording = File.createTempFile("hid", ".rec");
+        mScratch = File.createTempFile("hid", ".rec");
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mRecording);
+        for (byte[] report : mReports) {
+            recorder.record(HIDDeviceRecorder.RECORD_INPUT, mDevice, mDevice.getId(), report);
+        }
+        recorder.close();
+
+        mReplay = new HIDDeviceReplay(mManager, mRecording, mDevice.getId(), 0.0f, false);
+        mReplay.mRunning = true;
+    }
+
+    @TearDown
+    public void tearDown() {
+        HIDDeviceManager.release(mManager);
+        mRecording.delete();
+        mScratch.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPORTS)
+    public long usbInput() {
+        mScript.rewind();
+        mDevice.new InputThread().run();
+        return ShadowHIDDeviceManager.sChecksum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPORTS)
+    public long replay() {
+        mReplay.new ReplayThread().run();
+        return ShadowHIDDeviceManager.sChecksum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPORTS)
+    public void record() throws IOException {
+        HIDDeviceRecorder recorder = new HIDDeviceRecorder(mScratch);
+        for (byte[] report : mReports) {
+            recorder.record(HIDDeviceRecorder.RECORD_INPUT, mDevice, mDevice.getId(), report);
+        }
+        recorder.close();
+    }
+}
@@ -0,0 +1,86 @@
+package org.libsdl.app;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+/**
+    Measures joystick axis normalization in SDLJoystickHandler_API12.handleMotionEvent.
+
+    The joystick is added to the handler directly, as pollInputDevices() would after
+    finding it, rather than through the input manager.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class JoystickAxisBenchmark {
+
+    static final int DEVICE_ID = 7;
+
+    private SDLJoystickHandler_API12 mHandler;
+    private MotionEvent mEvent;
+
+    private static InputDevice.MotionRange range(int axis) {
+        return ReflectionHelpers.callConstructor(InputDevice.MotionRange.class,
+            ClassParameter.from(int.class, axis),
+            ClassParameter.from(int.class, InputDevice.SOURCE_JOYSTICK),
+            ClassParameter.from(float.class, -1.0f),
+            ClassParameter.from(float.class, 1.0f),
+            ClassParameter.from(float.class, 0.0f),
+            ClassParameter.from(float.class, 0.0f),
+            ClassParameter.from(float.class, 0.0f));
+    }
+
+    @Setup
+    public void setup() {
+        int[] axes = {
+            MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_Z,
+            MotionEvent.AXIS_RZ, MotionEvent.AXIS_BRAKE, MotionEvent.AXIS_GAS
+        };
+
+        SDLJoystickHandler_API12.SDLJoystick joystick = new SDLJoystickHandler_API12.SDLJoystick();
+        joystick.device_id = DEVICE_ID;
+        joystick.name = "Benchmark";
+        joystick.desc = "Benchmark";
+        joystick.axes = new ArrayList<InputDevice.MotionRange>();
+        joystick.hats = new ArrayList<InputDevice.MotionRange>();
+        for (int axis : axes) {
+            joystick.axes.add(range(axis));
+        }
+        joystick.hats.add(range(MotionEvent.AXIS_HAT_X));
+        joystick.hats.add(range(MotionEvent.AXIS_HAT_Y));
+
+        mHandler = new SDLJoystickHandler_API12();
+        ArrayList<SDLJoystickHandler_API12.SDLJoystick> joysticks = ReflectionHelpers.getField(mHandler, "mJoysticks");
+        joysticks.add(joystick);
+
+        MotionEvent.PointerProperties[] properties = { new MotionEvent.PointerProperties() };
+        properties[0].toolType = MotionEvent.TOOL_TYPE_UNKNOWN;
+        MotionEvent.PointerCoords[] coords = { new MotionEvent.PointerCoords() };
+        for (int i = 0; i < axes.length; i++) {
+            coords[0].setAxisValue(axes[i], 0.25f * (i - 2));
+        }
+        coords[0].setAxisValue(MotionEvent.AXIS_HAT_X, 1.0f);
+        mEvent = MotionEvent.obtain(0, 0, MotionEvent.ACTION_MOVE, 1, properties, coords, 0, 0, 1.0f, 1.0f,
+                                    DEVICE_ID, 0, InputDevice.SOURCE_JOYSTICK, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mEvent.recycle();
+    }
+
+    @Benchmark
+    public long axisMove() {
+        mHandler.handleMotionEvent(mEvent);
+        return ShadowSDLControllerManager.sChecksum;
+    }
+}
@@ -0,0 +1,38 @@
+package org.libsdl.app;
+
+import android.media.AudioTrack;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    An AudioTrack sink that takes at most {@link #sWriteChunk} bytes per write, so the
+    retry loops in SDLAudioManager run the way they do against a mixer that only has
+    room for part of a buffer.
+*/
+@Implements(AudioTrack.class)
+public class ShadowChunkedAudioTrack {
+
+    /** Largest write accepted per call, in bytes. */
+    public static int sWriteChunk = 4096;
+
+    @Implementation
+    protected static int native_get_min_buff_size(int sampleRateInHz, int channelConfig, int audioFormat) {
+        return 4096;
+    }
+
+    @Implementation
+    protected int native_write_float(float[] audioData, int offsetInFloats, int sizeInFloats, int format, boolean isBlocking) {
+        return Math.min(sizeInFloats, sWriteChunk / 4);
+    }
+
+    @Implementation
+    protected int native_write_short(short[] audioData, int offsetInShorts, int sizeInShorts, int format, boolean isBlocking) {
+        return Math.min(sizeInShorts, sWriteChunk / 2);
+    }
+
+    @Implementation
+    protected int native_write_byte(byte[] audioData, int offsetInBytes, int sizeInBytes, int format, boolean isBlocking) {
+        return Math.min(sizeInBytes, sWriteChunk);
+    }
+}
@@ -0,0 +1,27 @@
+package org.libsdl.app;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    Stands in for the native side of HIDDeviceManager, counting the reports handed to it.
+*/
+@Implements(value = HIDDeviceManager.class, isInAndroidSdk = false)
+public class ShadowHIDDeviceManager {
+
+    public static long sInputReports;
+    public static long sFeatureReports;
+    public static long sChecksum;
+
+    @Implementation
+    protected void HIDDeviceInputReport(int deviceID, byte[] report) {
+        ++sInputReports;
+        sChecksum += deviceID + report.length + report[report.length - 1];
+    }
+
+    @Implementation
+    protected void HIDDeviceFeatureReport(int deviceID, byte[] report) {
+        ++sFeatureReports;
+        sChecksum += deviceID + report.length;
+    }
+}
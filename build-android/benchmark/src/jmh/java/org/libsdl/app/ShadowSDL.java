@@ -0,0 +1,15 @@
+package org.libsdl.app;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    Skips loading native libraries, which aren't built for the host.
+*/
+@Implements(value = SDL.class, isInAndroidSdk = false)
+public class ShadowSDL {
+
+    @Implementation
+    public static void loadLibrary(String libraryName) {
+    }
+}
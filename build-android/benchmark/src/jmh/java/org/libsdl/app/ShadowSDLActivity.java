@@ -0,0 +1,25 @@
+package org.libsdl.app;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    Stands in for the native touch and mouse callbacks of SDLActivity.
+
+    The arguments are folded into a checksum so the JIT can't discard the calls.
+*/
+@Implements(value = SDLActivity.class, isInAndroidSdk = false)
+public class ShadowSDLActivity {
+
+    public static long sChecksum;
+
+    @Implementation
+    public static void onNativeTouch(int touchDevId, int pointerFingerId, int action, float x, float y, float p) {
+        sChecksum += touchDevId + pointerFingerId + action + Float.floatToRawIntBits(x) + Float.floatToRawIntBits(y) + Float.floatToRawIntBits(p);
+    }
+
+    @Implementation
+    public static void onNativeMouse(int button, int action, float x, float y, boolean relative) {
+        sChecksum += button + action + Float.floatToRawIntBits(x) + Float.floatToRawIntBits(y) + (relative ? 1 : 0);
+    }
+}
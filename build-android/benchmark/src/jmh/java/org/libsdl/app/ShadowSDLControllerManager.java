@@ -0,0 +1,25 @@
+package org.libsdl.app;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    Stands in for the native joystick callbacks of SDLControllerManager.
+
+    The arguments are folded into a checksum so the JIT can't discard the calls.
+*/
+@Implements(value = SDLControllerManager.class, isInAndroidSdk = false)
+public class ShadowSDLControllerManager {
+
+    public static long sChecksum;
+
+    @Implementation
+    public static void onNativeJoy(int device_id, int axis, float value) {
+        sChecksum += device_id + axis + Float.floatToRawIntBits(value);
+    }
+
+    @Implementation
+    public static void onNativeHat(int device_id, int hat_id, int x, int y) {
+        sChecksum += device_id + hat_id + x + y;
+    }
+}
@@ -0,0 +1,50 @@
+package org.libsdl.app;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbRequest;
+
+import java.nio.ByteBuffer;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+/**
+    A USB connection that completes queued requests with a scripted list of reports.
+
+    requestWait() returns null once the script runs out, as it does when the real
+    connection is closed, which ends the HIDDeviceUSB input loop.
+*/
+@Implements(UsbDeviceConnection.class)
+public class ShadowScriptedUsbDeviceConnection {
+
+    private byte[][] mReports = new byte[0][];
+    private int mNext;
+    private UsbRequest mRequest;
+    private ByteBuffer mBuffer;
+
+    public void setReports(byte[][] reports) {
+        mReports = reports;
+        mNext = 0;
+    }
+
+    public void rewind() {
+        mNext = 0;
+    }
+
+    boolean queue(UsbRequest request, ByteBuffer buffer) {
+        mRequest = request;
+        mBuffer = buffer;
+        return true;
+    }
+
+    @Implementation
+    protected UsbRequest requestWait() {
+        if (mRequest == null || mNext == mReports.length) {
+            return null;
+        }
+        mBuffer.put(mReports[mNext++]);
+        UsbRequest request = mRequest;
+        mRequest = null;
+        return request;
+    }
+}
@@ -0,0 +1,40 @@
+package org.libsdl.app;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbRequest;
+
+import java.nio.ByteBuffer;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+
+/**
+    A USB request that is completed by a ShadowScriptedUsbDeviceConnection.
+*/
+@Implements(UsbRequest.class)
+public class ShadowScriptedUsbRequest {
+
+    @RealObject
+    private UsbRequest mRequest;
+    private UsbDeviceConnection mConnection;
+
+    @Implementation
+    protected boolean initialize(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+        mConnection = connection;
+        return true;
+    }
+
+    @Implementation
+    protected boolean queue(ByteBuffer buffer, int length) {
+        ShadowScriptedUsbDeviceConnection connection = Shadow.extract(mConnection);
+        return connection.queue(mRequest, buffer);
+    }
+
+    @Implementation
+    protected void close() {
+        mConnection = null;
+    }
+}
@@ -0,0 +1,76 @@
+package org.libsdl.app;
+
+import android.os.Looper;
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.robolectric.RuntimeEnvironment;
+
+/**
+    Measures the touch path of SDLSurface.onTouch.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class TouchDispatchBenchmark {
+
+    @Param({"1", "5"})
+    public int pointers;
+
+    private SDLSurface mSurface;
+    private MotionEvent mMove;
+    private MotionEvent mPointerDown;
+
+    @Setup
+    public void setup() {
+        // The surface view creates its handlers on the thread that constructs it
+        if (Looper.myLooper() == null) {
+            Looper.prepare();
+        }
+        mSurface = new SDLSurface(RuntimeEnvironment.getApplication());
+        mSurface.onSizeChanged(2560, 1440, 0, 0);
+
+        MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[pointers];
+        MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointers];
+        for (int i = 0; i < pointers; i++) {
+            properties[i] = new MotionEvent.PointerProperties();
+            properties[i].id = i;
+            properties[i].toolType = MotionEvent.TOOL_TYPE_FINGER;
+            coords[i] = new MotionEvent.PointerCoords();
+            coords[i].x = 100.0f * (i + 1);
+            coords[i].y = 50.0f * (i + 1);
+            coords[i].pressure = 0.5f;
+        }
+        mMove = obtain(MotionEvent.ACTION_MOVE, properties, coords);
+        int action = (pointers > 1) ? MotionEvent.ACTION_POINTER_DOWN | ((pointers - 1) << MotionEvent.ACTION_POINTER_INDEX_SHIFT) : MotionEvent.ACTION_DOWN;
+        mPointerDown = obtain(action, properties, coords);
+    }
+
+    private static MotionEvent obtain(int action, MotionEvent.PointerProperties[] properties, MotionEvent.PointerCoords[] coords) {
+        return MotionEvent.obtain(0, 0, action, properties.length, properties, coords, 0, 0, 1.0f, 1.0f,
+                                  1, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMove.recycle();
+        mPointerDown.recycle();
+    }
+
+    @Benchmark
+    public long move() {
+        mSurface.onTouch(mSurface, mMove);
+        return ShadowSDLActivity.sChecksum;
+    }
+
+    @Benchmark
+    public long pointerDown() {
+        mSurface.onTouch(mSurface, mPointerDown);
+        return ShadowSDLActivity.sChecksum;
+    }
+}
@@ -0,0 +1,47 @@
+package org.libsdl.app;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+    Runs the JMH benchmarks inside a Robolectric sandbox, so they exercise the real
+    org.libsdl.app classes against the Android framework.
+
+    The benchmarks have to run in this JVM, as a forked one wouldn't have the sandbox,
+    so they are not forked.  Set the jmh.include system property to narrow the
+    selection and jmh.results to write the results as JSON.
+*/
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, shadows = {
+    ShadowSDL.class,
+    ShadowSDLActivity.class,
+    ShadowSDLControllerManager.class,
+    ShadowHIDDeviceManager.class,
+    ShadowChunkedAudioTrack.class,
+    ShadowScriptedUsbDeviceConnection.class,
+    ShadowScriptedUsbRequest.class
+})
+public class RunBenchmarks {
+
+    @Test
+    public void run() throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(System.getProperty("jmh.include", "org\\.libsdl\\.app\\..*Benchmark"))
+            .forks(0)
+            .addProfiler(GCProfiler.class);
+
+        String results = System.getProperty("jmh.results");
+        if (results != null) {
+            options.resultFormat(ResultFormatType.JSON).result(results);
+        }
+        new Runner(options.build()).run();
+    }
+}
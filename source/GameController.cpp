@@ -35,6 +35,10 @@
 #include <sstream>
 #include <memory>
 #include <random>
+#if defined __ANDROID__
+    #include <jni.h>
+    #include <time.h>
+#endif
 
 using namespace cugl;
 
@@ -73,6 +77,93 @@ Obstacle * clickedShadowCloud = nullptr;
 bool pinched = false;
 std::shared_ptr<Plant> currentPlant;
 
+#pragma mark -
+#pragma mark Android Activity
+#if defined __ANDROID__
+/** The activity class, kept to report every frame without looking it up again */
+static jclass activityClass = nullptr;
+static jmethodID reportFrameMethod = nullptr;
+
+/**
+ * Returns the activity class, looking up the frame report method the first time.
+ *
+ * @param env   The JNI environment of the calling thread
+ */
+static jclass getActivityClass(JNIEnv* env) {
+    if (activityClass == nullptr) {
+        jobject activity = (jobject)SDL_AndroidGetActivity();
+        jclass clazz(env->GetObjectClass(activity));
+        activityClass = (jclass)env->NewGlobalRef(clazz);
+        reportFrameMethod = env->GetStaticMethodID(clazz, "reportFrame", "(JJ)V");
+        env->DeleteLocalRef(activity);
+        env->DeleteLocalRef(clazz);
+    }
+    return activityClass;
+}
+
+/**
+ * Returns the time from CLOCK_MONOTONIC in nanoseconds, the clock of System.nanoTime()
+ */
+static long long frameTime() {
+    struct timespec now;
+    clock_gettime(CLOCK_MONOTONIC, &now);
+    return (long long)now.tv_sec*1000000000LL+now.tv_nsec;
+}
+
+/**
+ * Starts a new section of frame statistics, such as a level.
+ *
+ * @param label The name the statistics are logged under
+ */
+static void beginFrameStats(const std::string& label) {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jclass clazz = getActivityClass(env);
+    jmethodID method_id = env->GetStaticMethodID(clazz, "beginFrameStats", "(Ljava/lang/String;)V");
+    jstring jlabel = env->NewStringUTF(label.c_str());
+    env->CallStaticVoidMethod(clazz, method_id, jlabel);
+    env->DeleteLocalRef(jlabel);
+}
+
+/**
+ * Logs the frame statistics of the section started by beginFrameStats.
+ */
+static void endFrameStats() {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jclass clazz = getActivityClass(env);
+    jmethodID method_id = env->GetStaticMethodID(clazz, "endFrameStats", "()Ljava/lang/String;");
+    jobject summary = env->CallStaticObjectMethod(clazz, method_id);
+    env->DeleteLocalRef(summary);
+}
+
+/**
+ * Reports a frame for the statistics, the render scale and the performance hints.
+ *
+ * @param start When the frame started, from frameTime()
+ * @param end   When the frame was drawn, from frameTime()
+ */
+static void reportFrame(long long start, long long end) {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jclass clazz = getActivityClass(env);
+    env->CallStaticVoidMethod(clazz, reportFrameMethod, (jlong)start, (jlong)end);
+}
+
+/** The accelerometer period for tilt, as SDLSensorManager.DEFAULT_PERIOD_US */
+#define TILT_PERIOD_US  20000
+
+/**
+ * Sets the accelerometer sampling period and batching latency, in microseconds.
+ *
+ * @param periodUs  The sampling period, or 0 to turn the accelerometer off
+ * @param latencyUs How long the sensor hub may hold samples
+ */
+static void setSensorRate(int periodUs, int latencyUs) {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jclass clazz = getActivityClass(env);
+    jmethodID method_id = env->GetStaticMethodID(clazz, "setSensorRate", "(II)V");
+    env->CallStaticVoidMethod(clazz, method_id, periodUs, latencyUs);
+}
+#endif
+
 #pragma mark -
 #pragma mark Constructors
 /**
@@ -173,6 +264,9 @@ bool GameScene::init(const std::shared_ptr<AssetManager>& assets, const Rect& re
         CULog("Fail!");
         return false;
     }
+#if defined __ANDROID__
+    beginFrameStats("level"+std::to_string(levelId));
+#endif
     _assets = assets;
     _curr_bkgd = 1;
 
@@ -260,6 +354,10 @@ bool GameScene::init(const std::shared_ptr<AssetManager>& assets, const Rect& re
  * Disposes of all (non-static) resources allocated to this mode.
  */
 void GameScene::dispose() {
+#if defined __ANDROID__
+    if (_level) endFrameStats();
+#endif
+    _frameStart = 0;
     removePauseDisplay();
     removeVictoryDisplay();
     _input.dispose();
@@ -988,6 +1086,9 @@ Obstacle * GameScene::getSelectedObstacle(Vec2 pos, long touchID){
  */
 void GameScene::update(float dt) {
 //    CULog("game scene updating");
+#if defined __ANDROID__
+    _frameStart = frameTime();
+#endif
     
     _input.update(dt);
     ticks++;
@@ -1241,6 +1342,43 @@ void GameScene::update(float dt) {
     
 }
 
+/**
+ * Turns the accelerometer up to the tilt rate while a level runs, and off otherwise.
+ *
+ * On Android this sets the sensor rate of the activity when it changes, so the
+ * accelerometer doesn't wake the CPU in menus and on the pause screen.
+ *
+ * @param active    Whether the level is running and reads the tilt
+ */
+void GameScene::setTiltActive(bool active) {
+#if defined __ANDROID__
+    static int current = -1;
+    if (active == current) {
+        return;
+    }
+    current = active;
+    setSensorRate(active ? TILT_PERIOD_US : 0, 0);
+#endif
+}
+
+/**
+ * Draws the scene graph with the given sprite batch.
+ *
+ * On Android this also reports the time spent on the frame, from the start of
+ * update to the end of drawing, for the frame statistics and performance hints.
+ *
+ * @param batch     The SpriteBatch to draw with.
+ */
+void GameScene::render(const std::shared_ptr<SpriteBatch>& batch) {
+    Scene::render(batch);
+#if defined __ANDROID__
+    if (_frameStart != 0) {
+        reportFrame(_frameStart, frameTime());
+        _frameStart = 0;
+    }
+#endif
+}
+
 
 void GameScene::processRemoval(){
     //    process list for deletion
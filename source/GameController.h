@@ -104,6 +104,8 @@ protected:
     std::vector<Particle*> _pD;
 
     int _max_cloud_id = 0;
+    /** When the current frame started, in nanoseconds, or 0 before the first update */
+    long long _frameStart = 0;
 
     // VIEW
     /** Reference to the physics root of the scene graph */
@@ -350,6 +352,26 @@ public:
      */
     void update(float timestep);
 
+    /**
+     * Draws the scene graph with the given sprite batch.
+     *
+     * On Android this also reports the time spent on the frame, from the start of
+     * update to the end of drawing, for the frame statistics and performance hints.
+     *
+     * @param batch     The SpriteBatch to draw with.
+     */
+    void render(const std::shared_ptr<cugl::SpriteBatch>& batch);
+
+    /**
+     * Turns the accelerometer up to the tilt rate while a level runs, and off otherwise.
+     *
+     * On Android this sets the sensor rate of the activity when it changes, so the
+     * accelerometer doesn't wake the CPU in menus and on the pause screen.
+     *
+     * @param active    Whether the level is running and reads the tilt
+     */
+    void setTiltActive(bool active);
+
     /**
      * Resets the status of the game so that we can play again.
      */
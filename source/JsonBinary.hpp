@@ -0,0 +1,215 @@
+//
+//  JsonBinary.hpp
+//  WeatherDefender
+//
+//  Reader for the compiled level and scene files.  The Android build compiles
+//  json/*.json into json/*.jsonb (see the compileJson task in build-android/app/
+//  assets.gradle), so that level loads skip the text parse.  Where there is no
+//  compiled file, as on the other platforms or in development, the JSON is read
+//  as before.
+//
+//  Copyright © 2019 Cornell Game Design Initiative. All rights reserved.
+//
+
+#ifndef JsonBinary_hpp
+#define JsonBinary_hpp
+
+#include <cugl/cugl.h>
+#include <cugl/io/CUJsonReader.h>
+#include <cstring>
+#include <string>
+#include <vector>
+
+/**
+ * The compiled format, all integers little endian:
+ *
+ *   "WDJB", u16 version, u16 reserved
+ *   u32 string count, then for each string a u32 byte length and its UTF-8 bytes
+ *   the root value
+ *
+ * A value is a tag byte followed by its payload: 0 null, 1 false, 2 true,
+ * 3 integer (i64), 4 number (f64), 5 string (u32 string index), 6 array (u32
+ * count and the values), 7 object (u32 count and, per member, a u32 key string
+ * index and the value).
+ */
+#define JSON_BINARY_VERSION 1
+
+class JsonBinaryReader {
+private:
+    const Uint8* _data;
+    size_t _size;
+    size_t _pos;
+    bool _failed;
+    std::vector<std::string> _strings;
+
+    bool has(size_t count) {
+        if (_failed || _size - _pos < count) {
+            _failed = true;
+            return false;
+        }
+        return true;
+    }
+
+    Uint64 readInt(int bytes) {
+        Uint64 result = 0;
+        if (has(bytes)) {
+            for (int ii = 0; ii < bytes; ii++) {
+                result |= ((Uint64)_data[_pos++]) << (8*ii);
+            }
+        }
+        return result;
+    }
+
+    const std::string& readString() {
+        static const std::string empty;
+        Uint32 index = (Uint32)readInt(4);
+        if (_failed || index >= _strings.size()) {
+            _failed = true;
+            return empty;
+        }
+        return _strings[index];
+    }
+
+    std::shared_ptr<cugl::JsonValue> readValue(int depth) {
+        if (!has(1) || depth > 256) {
+            _failed = true;
+            return nullptr;
+        }
+
+        Uint8 tag = _data[_pos++];
+        switch (tag) {
+            case 0:
+                return cugl::JsonValue::allocNull();
+            case 1:
+                return cugl::JsonValue::alloc(false);
+            case 2:
+                return cugl::JsonValue::alloc(true);
+            case 3:
+                return cugl::JsonValue::alloc((long)(Sint64)readInt(8));
+            case 4:
+            {
+                Uint64 bits = readInt(8);
+                double value;
+                std::memcpy(&value, &bits, sizeof(value));
+                return cugl::JsonValue::alloc(value);
+            }
+            case 5:
+                return cugl::JsonValue::alloc(readString());
+            case 6:
+            {
+                Uint32 count = (Uint32)readInt(4);
+                auto result = cugl::JsonValue::allocArray();
+                for (Uint32 ii = 0; ii < count && !_failed; ii++) {
+                    auto child = readValue(depth+1);
+                    if (child != nullptr) {
+                        result->appendChild(child);
+                    }
+                }
+                return result;
+            }
+            case 7:
+            {
+                Uint32 count = (Uint32)readInt(4);
+                auto result = cugl::JsonValue::allocObject();
+                for (Uint32 ii = 0; ii < count && !_failed; ii++) {
+                    const std::string& key = readString();
+                    auto child = readValue(depth+1);
+                    if (child != nullptr) {
+                        result->appendChild(key, child);
+                    }
+                }
+                return result;
+            }
+            default:
+                _failed = true;
+                return nullptr;
+        }
+    }
+
+public:
+    /**
+     * Returns the JSON tree encoded in the given compiled data, or nullptr if it is invalid.
+     */
+    std::shared_ptr<cugl::JsonValue> read(const Uint8* data, size_t size) {
+        _data = data;
+        _size = size;
+        _pos = 0;
+        _failed = false;
+        _strings.clear();
+
+        if (!has(8) || std::memcmp(_data, "WDJB", 4) != 0) {
+            return nullptr;
+        }
+        _pos = 4;
+        if (readInt(2) != JSON_BINARY_VERSION) {
+            return nullptr;
+        }
+        readInt(2);
+
+        Uint32 count = (Uint32)readInt(4);
+        for (Uint32 ii = 0; ii < count && !_failed; ii++) {
+            Uint32 length = (Uint32)readInt(4);
+            if (has(length)) {
+                _strings.push_back(std::string((const char*)_data+_pos, length));
+                _pos += length;
+            }
+        }
+
+        auto result = readValue(0);
+        return _failed ? nullptr : result;
+    }
+};
+
+/**
+ * Returns the JSON tree for the given asset file, preferring its compiled form.
+ *
+ * For "json/level1.json" this first looks for "json/level1.jsonb".  If there is
+ * no compiled file, or it is out of date with this reader, it reads the JSON.
+ *
+ * @param file  the asset path of the JSON file
+ *
+ * @return the JSON tree for the given asset file, or nullptr if it cannot be read.
+ */
+inline std::shared_ptr<cugl::JsonValue> readJsonAsset(const std::string& file) {
+    std::string path = cugl::Application::get()->getAssetDirectory() + file + "b";
+    SDL_RWops* stream = SDL_RWFromFile(path.c_str(), "rb");
+    if (stream != nullptr) {
+        Sint64 size = SDL_RWsize(stream);
+        std::vector<Uint8> data(size > 0 ? (size_t)size : 0);
+        bool complete = size > 0 && SDL_RWread(stream, data.data(), 1, data.size()) == data.size();
+        SDL_RWclose(stream);
+
+        if (complete) {
+            JsonBinaryReader reader;
+            auto result = reader.read(data.data(), data.size());
+            if (result != nullptr) {
+                return result;
+            }
+        }
+        CULog("Ignoring invalid compiled JSON %s", path.c_str());
+    }
+
+    std::shared_ptr<cugl::JsonReader> reader = cugl::JsonReader::allocWithAsset(file);
+    return reader == nullptr ? nullptr : reader->readJson();
+}
+
+/**
+ * Loads the asset directory in the given file, preferring its compiled form.
+ *
+ * This is AssetManager::loadDirectory, reading the file with {@link readJsonAsset}.
+ *
+ * @param assets    the asset manager to load into
+ * @param file      the asset path of the JSON directory
+ *
+ * @return true if all assets specified in the directory were successfully loaded
+ */
+inline bool loadDirectoryAsset(const std::shared_ptr<cugl::AssetManager>& assets, const std::string& file) {
+    std::shared_ptr<cugl::JsonValue> json = readJsonAsset(file);
+    if (json == nullptr) {
+        CULogError("No asset directory located at '%s'",file.c_str());
+        return false;
+    }
+    return assets->loadDirectory(json);
+}
+
+#endif /* JsonBinary_hpp */
@@ -10,6 +10,7 @@
 #include "LevelModel.hpp"
 #include <map>
 #include "Constants.hpp"
+#include "JsonBinary.hpp"
 
 #pragma mark -
 #pragma mark Static Constructors
@@ -261,8 +262,7 @@ void LevelModel::showDebug(bool flag) {
  * @return true if successfully loaded the asset from a file
  */
 bool LevelModel::preload(const std::string& file) {
-    std::shared_ptr<JsonReader> reader = JsonReader::allocWithAsset(file);
-    return preload(reader->readJson());
+    return preload(readJsonAsset(file));
 }
 
 /**
@@ -13,6 +13,7 @@
 //  Version: 1/10/17
 //
 #include "LoadingController.h"
+#include "JsonBinary.hpp"
 
 using namespace cugl;
 
@@ -49,10 +50,10 @@ bool LoadingScene::init(const std::shared_ptr<cugl::AssetManager>& assets) {
     _active = true;
     // IMMEDIATELY load the splash screen assets
     _assets = assets;
-    _assets->loadDirectory("json/loading.json");
-    _assets->loadDirectory("json/levelselect.json");
-    _assets->loadDirectory("json/pausemenu.json");
-    _assets->loadDirectory("json/mainmenu.json");
+    loadDirectoryAsset(_assets,"json/loading.json");
+    loadDirectoryAsset(_assets,"json/levelselect.json");
+    loadDirectoryAsset(_assets,"json/pausemenu.json");
+    loadDirectoryAsset(_assets,"json/mainmenu.json");
     
     _assets->loadAsync<LevelModel>("level1","json/level1.json",nullptr);
     _assets->loadAsync<LevelModel>("level2","json/level2.json",nullptr);
@@ -13,9 +13,98 @@
 //
 #include "WDApp.h"
 #include "LevelModel.hpp"
+#if defined __ANDROID__
+    #include <jni.h>
+    #include <atomic>
+    #include <cmath>
+#endif
 
 using namespace cugl;
 
+#pragma mark -
+#pragma mark Android Activity
+#if defined __ANDROID__
+/**
+ * Tells the activity that the first frame was drawn, completing the startup timings.
+ */
+static void firstFramePresented() {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jobject activity = (jobject)SDL_AndroidGetActivity();
+    jclass clazz(env->GetObjectClass(activity));
+    static jmethodID method_id = env->GetStaticMethodID(clazz, "firstFramePresented", "()V");
+    env->CallStaticVoidMethod(clazz, method_id);
+    env->DeleteLocalRef(activity);
+    env->DeleteLocalRef(clazz);
+}
+
+/**
+ * Tells the activity the frame interval the game aims for, so the performance
+ * hints follow the frame rate cap rather than the display.
+ *
+ * @param fps   The frame rate the application is capped at
+ */
+static void setTargetFrameRate(float fps) {
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jobject activity = (jobject)SDL_AndroidGetActivity();
+    jclass clazz(env->GetObjectClass(activity));
+    jmethodID method_id = env->GetStaticMethodID(clazz, "setTargetFrameDuration", "(J)V");
+    env->CallStaticVoidMethod(clazz, method_id, (jlong)(fps > 0 ? 1000000000.0/fps : 0));
+    env->DeleteLocalRef(activity);
+    env->DeleteLocalRef(clazz);
+}
+
+/** The refresh rate policies, as SDLActivity.FRAME_RATE_POLICY_* */
+#define FRAME_RATE_POLICY_STATIC    0
+#define FRAME_RATE_POLICY_GAMEPLAY  1
+
+/**
+ * Asks the activity for the refresh rate that suits the screen, if it changed.
+ *
+ * @param policy    One of the FRAME_RATE_POLICY_* values
+ */
+static void setFrameRatePolicy(int policy) {
+    static int current = -1;
+    if (policy == current) {
+        return;
+    }
+    current = policy;
+
+    JNIEnv* env = (JNIEnv*)SDL_AndroidGetJNIEnv();
+    jobject activity = (jobject)SDL_AndroidGetActivity();
+    jclass clazz(env->GetObjectClass(activity));
+    static jmethodID method_id = env->GetStaticMethodID(clazz, "setFrameRatePolicy", "(I)F");
+    float rate = env->CallStaticFloatMethod(clazz, method_id, policy);
+    CULog("Refresh rate %.0f Hz", rate);
+    env->DeleteLocalRef(activity);
+    env->DeleteLocalRef(clazz);
+}
+
+/** The thermal status at which the frame rate is capped, as SDLThermalMonitor.THERMAL_STATUS_SEVERE */
+#define THERMAL_STATUS_SEVERE   3
+/** The frame rate cap while the device is overheating */
+#define THERMAL_FPS             30.0f
+
+/** The latest thermal status from the activity, or -1 if unknown */
+static std::atomic<int> thermalStatus(-1);
+/** The thermal headroom at the latest status change, or NaN if unknown */
+static std::atomic<float> thermalHeadroom(NAN);
+
+/**
+ * Records the thermal state of the device.
+ *
+ * This is called by the activity on its main thread whenever the thermal status
+ * changes, so the game loop only reads the atomics.
+ *
+ * @param status    One of the SDLThermalMonitor.THERMAL_STATUS_* values
+ * @param headroom  The forecast thermal headroom, or NaN if unknown
+ */
+extern "C" JNIEXPORT void JNICALL
+Java_org_libsdl_app_SDLActivity_nativeThermalChanged(JNIEnv* env, jclass clazz, jint status, jfloat headroom) {
+    thermalStatus = status;
+    thermalHeadroom = headroom;
+}
+#endif
+
 #pragma mark -
 #pragma mark Application State
 
@@ -53,6 +142,11 @@ void WeatherDefenderApp::onStartup() {
     _paused = false;
     _loading.init(_assets);
     
+#if defined __ANDROID__
+    _coolFPS = getFPS();
+    setTargetFrameRate(_coolFPS);
+#endif
+
     // Que up the other assets
     AudioChannels::start(24);
     _assets->loadDirectoryAsync("json/assets.json",nullptr);
@@ -292,6 +386,22 @@ void WeatherDefenderApp::update(float timestep) {
             }
         }
     }
+#if defined __ANDROID__
+    // The menus, level select and pause screens barely move, so only a running level
+    // gets the highest refresh rate
+    bool playing = _loaded && _mainselected && _levelselected && _gameplay.isActive() && !_paused;
+    setFrameRatePolicy(playing ? FRAME_RATE_POLICY_GAMEPLAY : FRAME_RATE_POLICY_STATIC);
+    // Likewise only a running level reads the tilt
+    _gameplay.setTiltActive(playing);
+    // An overheating device drops to THERMAL_FPS rather than waiting to be throttled
+    int status = thermalStatus;
+    float fps = status >= THERMAL_STATUS_SEVERE ? std::min(_coolFPS, THERMAL_FPS) : _coolFPS;
+    if (fps != getFPS()) {
+        CULog("Thermal status %d, headroom %.2f: %.0f fps", status, (float)thermalHeadroom, fps);
+        setFPS(fps);
+        setTargetFrameRate(fps);
+    }
+#endif
 }
 
 
@@ -317,5 +427,12 @@ void WeatherDefenderApp::draw() {
     else {
         _gameplay.render(_batch);
     }
+#if defined __ANDROID__
+    static bool presented = false;
+    if (!presented) {
+        presented = true;
+        firstFramePresented();
+    }
+#endif
 
 }
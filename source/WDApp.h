@@ -46,6 +46,8 @@ protected:
     bool _mainselected;
     bool _paused = false;
     bool _suspended = false;
+    /** The frame rate set at startup, which an overheating device is capped below */
+    float _coolFPS = 60.0f;
     
 public:
 #pragma mark Constructors